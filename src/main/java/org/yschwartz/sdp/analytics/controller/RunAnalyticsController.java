@@ -0,0 +1,33 @@
+package org.yschwartz.sdp.analytics.controller;
+
+import java.time.Duration;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.yschwartz.sdp.analytics.model.RunStats;
+import org.yschwartz.sdp.analytics.service.RunAnalyticsService;
+
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/analytics")
+public class RunAnalyticsController {
+    private final RunAnalyticsService runAnalyticsService;
+
+    public RunAnalyticsController(RunAnalyticsService runAnalyticsService) {
+        this.runAnalyticsService = runAnalyticsService;
+    }
+
+    @GetMapping
+    public Mono<RunStats> getFleetStats(@RequestParam(required = false) Duration window) {
+        return runAnalyticsService.getFleetStats(window);
+    }
+
+    @GetMapping("{functionName}")
+    public Mono<RunStats> getFunctionStats(@PathVariable String functionName, @RequestParam(required = false) Duration window) {
+        return runAnalyticsService.getFunctionStats(functionName, window);
+    }
+}
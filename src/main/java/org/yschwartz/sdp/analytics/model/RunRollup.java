@@ -0,0 +1,25 @@
+package org.yschwartz.sdp.analytics.model;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+
+@Data
+@Document
+public class RunRollup {
+    public static final String FLEET = "*";
+
+    @Id
+    private String id;
+    private String functionName;
+    private LocalDateTime bucketStart;
+    private long successes;
+    private long failures;
+    private Map<String, Long> exitCodes;
+    private byte[] histogram;
+    private LocalDateTime expireAt;
+}
@@ -0,0 +1,23 @@
+package org.yschwartz.sdp.analytics.model;
+
+import java.time.Duration;
+import java.util.Map;
+
+import lombok.Data;
+
+@Data
+public class RunStats {
+    private String functionName;
+    private Duration window;
+    private long count;
+    private long successes;
+    private long failures;
+    private double failureRate;
+    private Map<String, Long> exitCodes;
+    private double mean;
+    private long p50;
+    private long p90;
+    private long p95;
+    private long p99;
+    private long max;
+}
@@ -0,0 +1,14 @@
+package org.yschwartz.sdp.analytics.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import org.yschwartz.sdp.analytics.model.RunRollup;
+
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface RunRollupRepository extends ReactiveCrudRepository<RunRollup, String> {
+    Flux<RunRollup> findAllByFunctionNameAndBucketStartGreaterThanEqual(String functionName, LocalDateTime from);
+}
@@ -0,0 +1,227 @@
+package org.yschwartz.sdp.analytics.service;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.analytics.model.RunRollup;
+import org.yschwartz.sdp.analytics.model.RunStats;
+import org.yschwartz.sdp.analytics.repository.RunRollupRepository;
+import org.yschwartz.sdp.rundetails.model.RunDetails;
+
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+@Log4j2
+public class RunAnalyticsService {
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final RunRollupRepository runRollupRepository;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final Scheduler scheduler = Schedulers.newSingle("run-analytics");
+    private final ConcurrentMap<String, FunctionStats> stats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RunRollup> unsaved = new ConcurrentHashMap<>();
+
+    @Value("${analytics.rollup.interval:60000}")
+    private long rollupInterval;
+    @Value("${analytics.retention:30}")
+    private int retentionDays;
+    @Value("${analytics.window.default:PT1H}")
+    private Duration defaultWindow;
+    @Value("${analytics.window.max:P30D}")
+    private Duration maxWindow;
+
+    public RunAnalyticsService(RunRollupRepository runRollupRepository, ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.runRollupRepository = runRollupRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @PostConstruct
+    public void startRollups() {
+        var indexOperations = reactiveMongoTemplate.indexOps(RunRollup.class);
+        indexOperations.ensureIndex(new Index().on("functionName", Sort.Direction.ASC).on("bucketStart", Sort.Direction.ASC).named("functionName_bucketStart"))
+                .then(indexOperations.ensureIndex(new Index().on("expireAt", Sort.Direction.ASC).expire(Duration.ZERO).named("expireAt_ttl")))
+                .doOnError(e -> log.error("Failed to create run rollup indexes", e))
+                .subscribe();
+        scheduler.schedulePeriodically(() -> rollup().subscribe(), rollupInterval, rollupInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void flushRollups() {
+        scheduler.dispose();
+        rollup().block(Duration.ofMillis(rollupInterval));
+    }
+
+    public void record(RunDetails runDetails) {
+        var functionStats = stats.computeIfAbsent(runDetails.getFunctionName(), name -> new FunctionStats());
+        var start = Optional.ofNullable(runDetails.getAdmittedTime()).orElse(runDetails.getStartTime());
+        Optional.ofNullable(runDetails.getEndTime())
+                .map(end -> Duration.between(start, end).toMillis())
+                .ifPresent(duration -> functionStats.durations.recordValue(Math.max(duration, 0)));
+        if (runDetails.getStatus() == RunDetails.Status.SUCCESS)
+            functionStats.successes.increment();
+        else
+            functionStats.failures.increment();
+        Optional.ofNullable(runDetails.getExitCode())
+                .ifPresent(code -> functionStats.exitCodes.computeIfAbsent(String.valueOf(code), x -> new LongAdder()).increment());
+    }
+
+    public void clear(String functionName) {
+        stats.remove(functionName);
+        unsaved.remove(functionName);
+    }
+
+    public Mono<RunStats> getFunctionStats(String functionName, Duration window) {
+        var effectiveWindow = getWindow(window);
+        return runRollupRepository.findAllByFunctionNameAndBucketStartGreaterThanEqual(functionName, LocalDateTime.now().minus(effectiveWindow))
+                .collectList()
+                .map(rollups -> toStats(functionName, effectiveWindow, rollups));
+    }
+
+    public Mono<RunStats> getFleetStats(Duration window) {
+        return getFunctionStats(RunRollup.FLEET, window);
+    }
+
+    private Mono<Void> rollup() {
+        var bucketStart = LocalDateTime.now().minus(Duration.ofMillis(rollupInterval));
+        var fleet = createRollup(RunRollup.FLEET, bucketStart);
+        var fleetHistogram = new Histogram(SIGNIFICANT_DIGITS);
+        var rollups = new ArrayList<RunRollup>();
+        for (var entry : stats.entrySet()) {
+            var rollup = rollup(entry.getKey(), entry.getValue(), bucketStart);
+            merge(fleet, fleetHistogram, rollup);
+            rollups.add(addUnsaved(rollup));
+        }
+        fleet.setHistogram(encode(fleetHistogram));
+        rollups.add(addUnsaved(fleet));
+        rollups.removeIf(rollup -> rollup.getSuccesses() + rollup.getFailures() == 0);
+        if (rollups.isEmpty())
+            return Mono.empty();
+        var saved = ConcurrentHashMap.<String>newKeySet();
+        return runRollupRepository.saveAll(rollups)
+                .doOnNext(rollup -> saved.add(rollup.getFunctionName()))
+                .doOnError(e -> log.error("Failed to save {} run rollups, retrying on next rollup", rollups.size() - saved.size(), e))
+                .doOnError(e -> rollups.stream().filter(rollup -> !saved.contains(rollup.getFunctionName())).forEach(this::restore))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private RunRollup addUnsaved(RunRollup rollup) {
+        Optional.ofNullable(unsaved.remove(rollup.getFunctionName())).ifPresent(previous -> {
+            var histogram = decode(rollup.getHistogram());
+            merge(rollup, histogram, previous);
+            rollup.setHistogram(encode(histogram));
+        });
+        return rollup;
+    }
+
+    private void restore(RunRollup rollup) {
+        if (RunRollup.FLEET.equals(rollup.getFunctionName()) || stats.containsKey(rollup.getFunctionName()))
+            unsaved.put(rollup.getFunctionName(), rollup);
+    }
+
+    private RunRollup rollup(String functionName, FunctionStats functionStats, LocalDateTime bucketStart) {
+        var rollup = createRollup(functionName, bucketStart);
+        rollup.setSuccesses(functionStats.successes.sumThenReset());
+        rollup.setFailures(functionStats.failures.sumThenReset());
+        var exitCodes = new HashMap<String, Long>();
+        functionStats.exitCodes.forEach((code, count) -> Optional.of(count.sumThenReset()).filter(c -> c > 0).ifPresent(c -> exitCodes.put(code, c)));
+        rollup.setExitCodes(exitCodes);
+        rollup.setHistogram(encode(functionStats.durations.getIntervalHistogram()));
+        return rollup;
+    }
+
+    private RunRollup createRollup(String functionName, LocalDateTime bucketStart) {
+        var rollup = new RunRollup();
+        rollup.setFunctionName(functionName);
+        rollup.setBucketStart(bucketStart);
+        rollup.setExitCodes(new HashMap<>());
+        rollup.setExpireAt(bucketStart.plusDays(retentionDays));
+        return rollup;
+    }
+
+    private static void merge(RunRollup target, Histogram targetHistogram, RunRollup rollup) {
+        target.setSuccesses(target.getSuccesses() + rollup.getSuccesses());
+        target.setFailures(target.getFailures() + rollup.getFailures());
+        rollup.getExitCodes().forEach((code, count) -> target.getExitCodes().merge(code, count, Long::sum));
+        targetHistogram.add(decode(rollup.getHistogram()));
+    }
+
+    private static RunStats toStats(String functionName, Duration window, List<RunRollup> rollups) {
+        var histogram = new Histogram(SIGNIFICANT_DIGITS);
+        var exitCodes = new HashMap<String, Long>();
+        var runStats = new RunStats();
+        runStats.setFunctionName(functionName);
+        runStats.setWindow(window);
+        rollups.forEach(rollup -> {
+            runStats.setSuccesses(runStats.getSuccesses() + rollup.getSuccesses());
+            runStats.setFailures(runStats.getFailures() + rollup.getFailures());
+            Optional.ofNullable(rollup.getExitCodes()).ifPresent(codes -> codes.forEach((code, count) -> exitCodes.merge(code, count, Long::sum)));
+            Optional.ofNullable(rollup.getHistogram()).map(RunAnalyticsService::decode).ifPresent(histogram::add);
+        });
+        var count = runStats.getSuccesses() + runStats.getFailures();
+        runStats.setCount(count);
+        runStats.setFailureRate(count == 0 ? 0 : (double) runStats.getFailures() / count);
+        runStats.setExitCodes(exitCodes);
+        runStats.setMean(histogram.getMean());
+        runStats.setP50(histogram.getValueAtPercentile(50));
+        runStats.setP90(histogram.getValueAtPercentile(90));
+        runStats.setP95(histogram.getValueAtPercentile(95));
+        runStats.setP99(histogram.getValueAtPercentile(99));
+        runStats.setMax(histogram.getMaxValue());
+        return runStats;
+    }
+
+    private Duration getWindow(Duration window) {
+        var effectiveWindow = Optional.ofNullable(window).filter(w -> !w.isNegative() && !w.isZero()).orElse(defaultWindow);
+        return effectiveWindow.compareTo(maxWindow) > 0 ? maxWindow : effectiveWindow;
+    }
+
+    private static byte[] encode(Histogram histogram) {
+        var buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        var length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        var bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Histogram decode(byte[] bytes) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+        } catch (Exception e) {
+            log.warn("Failed to decode run rollup histogram", e);
+            return new Histogram(SIGNIFICANT_DIGITS);
+        }
+    }
+
+    private static class FunctionStats {
+        private final Recorder durations = new Recorder(SIGNIFICANT_DIGITS);
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> exitCodes = new ConcurrentHashMap<>();
+    }
+}
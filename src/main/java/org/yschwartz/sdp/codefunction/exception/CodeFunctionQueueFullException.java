@@ -0,0 +1,13 @@
+package org.yschwartz.sdp.codefunction.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class CodeFunctionQueueFullException extends RuntimeException {
+    private static final String MESSAGE = "Invocation queue is full, code function %s was not triggered";
+
+    public CodeFunctionQueueFullException(String functionName) {
+        super(MESSAGE.formatted(functionName));
+    }
+}
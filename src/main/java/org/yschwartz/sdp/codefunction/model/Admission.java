@@ -0,0 +1,30 @@
+package org.yschwartz.sdp.codefunction.model;
+
+import java.time.Instant;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+@Getter
+@RequiredArgsConstructor
+public class Admission {
+    private final String functionName;
+    private final int maxConcurrency;
+    private final Instant creationTime = Instant.now();
+    @Getter(AccessLevel.NONE)
+    private final Sinks.Empty<Void> grant = Sinks.empty();
+    @Setter
+    private boolean queued;
+
+    public Mono<Void> getGranted() {
+        return grant.asMono();
+    }
+
+    public void grant() {
+        grant.tryEmitEmpty();
+    }
+}
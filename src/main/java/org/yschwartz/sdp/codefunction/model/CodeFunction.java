@@ -25,6 +25,8 @@ public class CodeFunction {
     private NetworkMode networkMode;
     private Boolean privileged;
     private Integer runTimeout;
+    private Integer warmPoolSize;
+    private Integer maxConcurrency;
     // deploy
     private DeploymentDetails deploymentDetails;
     private BaseSchedule schedule;
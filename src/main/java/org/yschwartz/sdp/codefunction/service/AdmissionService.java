@@ -0,0 +1,121 @@
+package org.yschwartz.sdp.codefunction.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.codefunction.exception.CodeFunctionQueueFullException;
+import org.yschwartz.sdp.codefunction.model.Admission;
+import org.yschwartz.sdp.codefunction.model.CodeFunction;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+
+@Service
+@Log4j2
+public class AdmissionService {
+    private static final String QUEUE_DEPTH_METRIC = "sdp.queue.depth";
+    private static final String QUEUE_WAIT_METRIC = "sdp.queue.wait";
+    private static final String RUNNING_METRIC = "sdp.runs.active";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Deque<Admission> queue = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerFunction = new HashMap<>();
+    private int running;
+    private Timer waitTimer;
+
+    @Value("${run.concurrency.max:100}")
+    private int maxConcurrency;
+    @Value("${run.queue.capacity:1000}")
+    private int queueCapacity;
+
+    public AdmissionService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        meterRegistry.gauge(QUEUE_DEPTH_METRIC, this, AdmissionService::getQueueDepth);
+        meterRegistry.gauge(RUNNING_METRIC, this, AdmissionService::getRunning);
+        waitTimer = meterRegistry.timer(QUEUE_WAIT_METRIC);
+    }
+
+    public Admission admit(CodeFunction codeFunction) {
+        var admission = new Admission(codeFunction.getName(), Optional.ofNullable(codeFunction.getMaxConcurrency()).orElse(0));
+        synchronized (this) {
+            if (canRun(admission)) {
+                start(admission);
+            } else if (queue.size() >= queueCapacity) {
+                throw new CodeFunctionQueueFullException(codeFunction.getName());
+            } else {
+                admission.setQueued(true);
+                queue.addLast(admission);
+                log.debug("Queued code function: {}, queue depth: {}", admission.getFunctionName(), queue.size());
+                return admission;
+            }
+        }
+        admission.grant();
+        return admission;
+    }
+
+    public void release(Admission admission) {
+        var granted = new LinkedList<Admission>();
+        synchronized (this) {
+            if (!queue.remove(admission)) {
+                running--;
+                runningPerFunction.computeIfPresent(admission.getFunctionName(), (name, count) -> count > 1 ? count - 1 : null);
+            }
+            dispatch(granted);
+        }
+        granted.forEach(this::grant);
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    private void dispatch(List<Admission> granted) {
+        var iterator = queue.iterator();
+        while (running < maxConcurrency && iterator.hasNext()) {
+            var admission = iterator.next();
+            if (canRun(admission)) {
+                iterator.remove();
+                start(admission);
+                granted.add(admission);
+            }
+        }
+    }
+
+    private void grant(Admission admission) {
+        waitTimer.record(Duration.between(admission.getCreationTime(), Instant.now()));
+        admission.grant();
+    }
+
+    private boolean canRun(Admission admission) {
+        if (running >= maxConcurrency)
+            return false;
+        var functionRunning = runningPerFunction.getOrDefault(admission.getFunctionName(), 0);
+        return admission.getMaxConcurrency() <= 0 || functionRunning < admission.getMaxConcurrency();
+    }
+
+    private void start(Admission admission) {
+        running++;
+        runningPerFunction.merge(admission.getFunctionName(), 1, Integer::sum);
+    }
+}
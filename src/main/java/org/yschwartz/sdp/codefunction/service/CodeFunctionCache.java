@@ -0,0 +1,178 @@
+package org.yschwartz.sdp.codefunction.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.codefunction.model.CodeFunction;
+import org.yschwartz.sdp.codefunction.repository.CodeFunctionRepository;
+
+import com.mongodb.client.model.changestream.OperationType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+@Service
+@Log4j2
+public class CodeFunctionCache {
+    private static final String HITS_METRIC = "sdp.codefunction.cache.hits";
+    private static final String MISSES_METRIC = "sdp.codefunction.cache.misses";
+    private static final String SIZE_METRIC = "sdp.codefunction.cache.size";
+    private static final String ID_FIELD = "_id";
+
+    private final CodeFunctionRepository codeFunctionRepository;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private Map<String, Document> functions;
+    private boolean complete;
+    private long generation;
+    private Counter hits;
+    private Counter misses;
+    private Disposable changeStream;
+
+    @Value("${codefunction.cache.size:1000}")
+    private int capacity;
+    @Value("${codefunction.cache.change-stream:false}")
+    private boolean changeStreamEnabled;
+
+    public CodeFunctionCache(CodeFunctionRepository codeFunctionRepository, ReactiveMongoTemplate reactiveMongoTemplate, MeterRegistry meterRegistry) {
+        this.codeFunctionRepository = codeFunctionRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        functions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Document> eldest) {
+                if (size() <= capacity)
+                    return false;
+                complete = false;
+                return true;
+            }
+        };
+        hits = meterRegistry.counter(HITS_METRIC);
+        misses = meterRegistry.counter(MISSES_METRIC);
+        meterRegistry.gauge(SIZE_METRIC, this, CodeFunctionCache::size);
+        if (changeStreamEnabled)
+            changeStream = reactiveMongoTemplate.changeStream(CodeFunction.class)
+                    .listen()
+                    .doOnSubscribe(x -> clear())
+                    .doOnNext(this::onChange)
+                    .doOnError(e -> log.warn("Code function change stream failed, resubscribing", e))
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                    .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Optional.ofNullable(changeStream).ifPresent(Disposable::dispose);
+    }
+
+    public Mono<CodeFunction> get(String functionName) {
+        var cached = getCached(functionName);
+        if (cached.isPresent()) {
+            hits.increment();
+            return Mono.just(read(cached.get()));
+        }
+        misses.increment();
+        var readGeneration = getGeneration();
+        return codeFunctionRepository.findById(functionName)
+                .doOnNext(codeFunction -> putIfCurrent(codeFunction, readGeneration));
+    }
+
+    public Flux<CodeFunction> getAll() {
+        List<Document> cached;
+        synchronized (this) {
+            cached = complete ? List.copyOf(functions.values()) : null;
+        }
+        if (cached != null) {
+            hits.increment();
+            return Flux.fromIterable(cached).map(this::read);
+        }
+        misses.increment();
+        var readGeneration = getGeneration();
+        return codeFunctionRepository.findAll()
+                .doOnNext(codeFunction -> putIfCurrent(codeFunction, readGeneration))
+                .doOnComplete(() -> setComplete(readGeneration));
+    }
+
+    public void put(CodeFunction codeFunction) {
+        var document = write(codeFunction);
+        synchronized (this) {
+            functions.put(codeFunction.getName(), document);
+        }
+    }
+
+    public synchronized void remove(String functionName) {
+        generation++;
+        functions.remove(functionName);
+    }
+
+    public synchronized void clear() {
+        generation++;
+        complete = false;
+        functions.clear();
+    }
+
+    public synchronized int size() {
+        return functions.size();
+    }
+
+    private void onChange(ChangeStreamEvent<CodeFunction> event) {
+        var operationType = event.getOperationType();
+        var documentKey = event.getRaw().getDocumentKey();
+        if (operationType == OperationType.DROP || operationType == OperationType.INVALIDATE || documentKey == null) {
+            clear();
+            return;
+        }
+        remove(documentKey.getString(ID_FIELD).getValue());
+    }
+
+    private synchronized Optional<Document> getCached(String functionName) {
+        return Optional.ofNullable(functions.get(functionName));
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    private void putIfCurrent(CodeFunction codeFunction, long readGeneration) {
+        var document = write(codeFunction);
+        synchronized (this) {
+            if (generation == readGeneration)
+                functions.putIfAbsent(codeFunction.getName(), document);
+        }
+    }
+
+    private synchronized void setComplete(long readGeneration) {
+        complete = generation == readGeneration && functions.size() <= capacity;
+    }
+
+    private Document write(CodeFunction codeFunction) {
+        var document = new Document();
+        reactiveMongoTemplate.getConverter().write(codeFunction, document);
+        return document;
+    }
+
+    private CodeFunction read(Document document) {
+        return reactiveMongoTemplate.getConverter().read(CodeFunction.class, document);
+    }
+}
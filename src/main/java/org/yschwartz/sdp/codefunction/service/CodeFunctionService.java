@@ -4,21 +4,32 @@ import static org.yschwartz.sdp.common.util.FunctionalUtil.getOrCreate;
 import static org.yschwartz.sdp.common.util.StringUtils.createContainerName;
 
 import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.analytics.service.RunAnalyticsService;
 import org.yschwartz.sdp.codefunction.exception.CodeFunctionNotFoundException;
+import org.yschwartz.sdp.codefunction.model.Admission;
 import org.yschwartz.sdp.codefunction.model.CodeFunction;
 import org.yschwartz.sdp.codefunction.model.DeploymentDetails;
 import org.yschwartz.sdp.codefunction.repository.CodeFunctionRepository;
-import org.yschwartz.sdp.common.service.FileService;
+import org.yschwartz.sdp.docker.model.BuildPriority;
 import org.yschwartz.sdp.docker.service.DockerBuildService;
 import org.yschwartz.sdp.docker.service.DockerRunService;
+import org.yschwartz.sdp.docker.service.WarmPoolService;
 import org.yschwartz.sdp.rundetails.model.RunDetails;
 import org.yschwartz.sdp.rundetails.service.RunDetailsService;
+import org.yschwartz.sdp.runlogs.service.RunLogsService;
+import org.yschwartz.sdp.schedule.model.BaseSchedule;
+import org.yschwartz.sdp.schedule.model.Firing;
+import org.yschwartz.sdp.schedule.service.ScheduleLeaseService;
 import org.yschwartz.sdp.schedule.service.ScheduleService;
 
 import lombok.extern.log4j.Log4j2;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -26,63 +37,135 @@ import reactor.core.publisher.Mono;
 @Service
 @Log4j2
 public class CodeFunctionService {
+    private static final String CANCELLED_MESSAGE = "Cancelled by a newer scheduled run";
+
     private final CodeFunctionRepository codeFunctionRepository;
+    private final CodeFunctionCache codeFunctionCache;
     private final DockerRunService dockerRunService;
     private final DockerBuildService dockerBuildService;
     private final FunctionValidationService functionValidationService;
     private final RunDetailsService runDetailsService;
     private final FunctionDeploymentService functionDeploymentService;
-    private final FileService fileService;
     private final ScheduleService scheduleService;
-
-    public CodeFunctionService(CodeFunctionRepository codeFunctionRepository, DockerRunService dockerRunService, DockerBuildService dockerBuildService, FunctionValidationService functionValidationService, RunDetailsService runDetailsService, FunctionDeploymentService functionDeploymentService, FileService fileService, ScheduleService scheduleService) {
+    private final ScheduleLeaseService scheduleLeaseService;
+    private final WarmPoolService warmPoolService;
+    private final AdmissionService admissionService;
+    private final RunTrackingService runTrackingService;
+    private final RunAnalyticsService runAnalyticsService;
+    private final RunLogsService runLogsService;
+
+    public CodeFunctionService(CodeFunctionRepository codeFunctionRepository, CodeFunctionCache codeFunctionCache, DockerRunService dockerRunService, DockerBuildService dockerBuildService, FunctionValidationService functionValidationService, RunDetailsService runDetailsService, FunctionDeploymentService functionDeploymentService, ScheduleService scheduleService, ScheduleLeaseService scheduleLeaseService, WarmPoolService warmPoolService, AdmissionService admissionService, RunTrackingService runTrackingService, RunAnalyticsService runAnalyticsService, RunLogsService runLogsService) {
         this.codeFunctionRepository = codeFunctionRepository;
+        this.codeFunctionCache = codeFunctionCache;
         this.dockerRunService = dockerRunService;
         this.dockerBuildService = dockerBuildService;
         this.functionValidationService = functionValidationService;
         this.runDetailsService = runDetailsService;
         this.functionDeploymentService = functionDeploymentService;
-        this.fileService = fileService;
         this.scheduleService = scheduleService;
+        this.scheduleLeaseService = scheduleLeaseService;
+        this.warmPoolService = warmPoolService;
+        this.admissionService = admissionService;
+        this.runTrackingService = runTrackingService;
+        this.runAnalyticsService = runAnalyticsService;
+        this.runLogsService = runLogsService;
     }
 
     public Mono<CodeFunction> getCodeFunction(String functionName) {
-        return codeFunctionRepository.findById(functionName)
+        return codeFunctionCache.get(functionName)
                 .switchIfEmpty(Mono.error(() -> new CodeFunctionNotFoundException(functionName)))
                 .map(this::populateTransientFields);
     }
 
     public Flux<CodeFunction> getAllCodeFunctions() {
-        return codeFunctionRepository.findAll().map(this::populateTransientFields);
+        return codeFunctionCache.getAll().map(this::populateTransientFields);
     }
 
     public Mono<CodeFunction> createCodeFunction(CodeFunction codeFunction) {
         return functionValidationService.validateAndCreate(codeFunction, getCodeFunction(codeFunction.getName()))
                 .flatMap(codeFunctionRepository::save)
+                .doOnSuccess(codeFunctionCache::put)
                 .doOnSuccess(functionDeploymentService::createMainFile)
-                .doOnSuccess(function -> dockerBuildService.build(function, true).subscribe())
-                .doOnSuccess(function -> scheduleService.createOrUpdateTask(function.getName(), function.getSchedule(), () -> triggerCodeFunction(function.getName()).subscribe()))
+                .doOnSuccess(function -> dockerBuildService.build(function, true, BuildPriority.FOREGROUND).subscribe())
+                .doOnSuccess(this::scheduleCodeFunction)
                 .map(this::populateTransientFields);
     }
 
     public Mono<CodeFunction> updateCodeFunction(CodeFunction codeFunction) {
         return functionValidationService.validateAndUpdate(codeFunction, getCodeFunction(codeFunction.getName()))
                 .flatMap(codeFunctionRepository::save)
-                .doOnSuccess(function -> dockerBuildService.build(function, false).subscribe())
-                .doOnSuccess(function -> scheduleService.createOrUpdateTask(function.getName(), function.getSchedule(), () -> triggerCodeFunction(function.getName()).subscribe()))
+                .doOnSuccess(codeFunctionCache::put)
+                .doOnSuccess(function -> dockerBuildService.build(function, false, BuildPriority.FOREGROUND).subscribe())
+                .doOnSuccess(warmPoolService::refill)
+                .doOnSuccess(this::scheduleCodeFunction)
                 .map(this::populateTransientFields);
     }
 
+    public void scheduleCodeFunction(CodeFunction codeFunction) {
+        var functionName = codeFunction.getName();
+        var schedule = codeFunction.getSchedule();
+        scheduleService.createOrUpdateTask(functionName, schedule, firing -> {
+            if (scheduleLeaseService.isOwner(functionName))
+                fireCodeFunction(functionName, schedule.getOverlapPolicy(), firing);
+        });
+    }
+
+    private void fireCodeFunction(String functionName, BaseSchedule.OverlapPolicy overlapPolicy, Firing firing) {
+        Runnable fire = () -> triggerCodeFunction(functionName, firing).subscribe();
+        switch (runTrackingService.onFire(functionName, overlapPolicy, fire)) {
+            case FIRE -> fire.run();
+            case SKIPPED -> runDetailsService.saveSkippedDetails(createContainerName(functionName), functionName, firing).subscribe();
+            default -> {
+            }
+        }
+    }
+
     public Mono<RunDetails> triggerCodeFunction(String functionName) {
+        return triggerCodeFunction(functionName, null);
+    }
+
+    private Mono<RunDetails> triggerCodeFunction(String functionName, Firing firing) {
         var containerName = createContainerName(functionName);
         var codeFunctionRef = new AtomicReference<CodeFunction>();
-        return getCodeFunction(functionName)
+        var admissionRef = new AtomicReference<Admission>();
+        var launched = new AtomicBoolean();
+        var run = Disposables.swap();
+        return Mono.fromRunnable(() -> runTrackingService.start(functionName, containerName, run))
+                .then(getCodeFunction(functionName))
                 .doOnSuccess(codeFunctionRef::set)
-                .flatMap(x -> runDetailsService.saveInProgressDetails(containerName, functionName))
-                .doOnSuccess(details -> dockerRunService.run(codeFunctionRef.get(), containerName)
+                .map(admissionService::admit)
+                .doOnNext(admissionRef::set)
+                .flatMap(admission -> runDetailsService.saveTriggeredDetails(containerName, functionName, admission.isQueued(), firing)
+                        .doOnError(e -> admissionService.release(admission))
+                        .doOnSuccess(details -> {
+                            if (launched.compareAndSet(false, true))
+                                run.update(run(codeFunctionRef.get(), containerName, details, admission));
+                        }))
+                .doOnError(e -> runTrackingService.complete(functionName, containerName))
+                .doOnCancel(() -> {
+                    if (launched.compareAndSet(false, true))
+                        abandon(functionName, containerName, admissionRef.get());
+                });
+    }
+
+    private void abandon(String functionName, String containerName, Admission admission) {
+        Optional.ofNullable(admission).ifPresent(admissionService::release);
+        runTrackingService.complete(functionName, containerName);
+    }
+
+    private Disposable run(CodeFunction codeFunction, String containerName, RunDetails runDetails, Admission admission) {
+        return admission.getGranted()
+                .then(Mono.defer(() -> admission.isQueued() ? runDetailsService.saveInProgressDetails(runDetails) : Mono.just(runDetails)))
+                .flatMap(details -> dockerRunService.run(codeFunction, containerName, host -> details.setHost(host.getId()))
                         .flatMap(i -> runDetailsService.saveSuccessDetails(details, i))
                         .onErrorResume(e -> runDetailsService.saveFailureDetails(details, e.getMessage()))
-                        .subscribe());
+                        .doOnSuccess(runAnalyticsService::record))
+                .doOnCancel(() -> runDetailsService.saveFailureDetails(runDetails, CANCELLED_MESSAGE).subscribe())
+                .doFinally(x -> {
+                    admissionService.release(admission);
+                    runTrackingService.complete(codeFunction.getName(), containerName);
+                })
+                .subscribe();
     }
 
     public Mono<CodeFunction> deployCodeFunction(String functionName) {
@@ -90,15 +173,22 @@ public class CodeFunctionService {
                 .doOnSuccess(x -> functionDeploymentService.deploy(functionName))
                 .map(CodeFunctionService::updateDeploymentDetails)
                 .flatMap(codeFunctionRepository::save)
+                .doOnSuccess(codeFunctionCache::put)
                 .map(this::populateTransientFields);
     }
 
     public Mono<String> deleteCodeFunction(String functionName) {
         return getCodeFunction(functionName)
                 .flatMap(codeFunctionRepository::delete)
+                .doOnSuccess(x -> codeFunctionCache.remove(functionName))
                 .doOnSuccess(function -> scheduleService.deleteTask(functionName))
-                .doOnSuccess(x -> fileService.deleteAll(functionName))
+                .doOnSuccess(x -> warmPoolService.drain(functionName))
+                .doOnSuccess(x -> runTrackingService.clear(functionName))
+                .doOnSuccess(x -> runAnalyticsService.clear(functionName))
+                .doOnSuccess(x -> runLogsService.deleteLogs(functionName))
+                .doOnSuccess(x -> functionDeploymentService.delete(functionName))
                 .doOnSuccess(x -> runDetailsService.deleteAllRunDetails(functionName).subscribe())
+                .doOnSuccess(x -> dockerBuildService.delete(functionName).subscribe())
                 .then(Mono.just(functionName));
     }
 
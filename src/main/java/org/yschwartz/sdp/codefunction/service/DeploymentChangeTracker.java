@@ -0,0 +1,203 @@
+package org.yschwartz.sdp.codefunction.service;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static org.yschwartz.sdp.common.service.FileService.FileType.RESOURCES;
+import static org.yschwartz.sdp.common.service.FileService.FileType.VOLUME;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.common.service.FileService;
+import org.yschwartz.try_utils.model.Try;
+
+import lombok.extern.log4j.Log4j2;
+
+@Service
+@Log4j2
+public class DeploymentChangeTracker {
+    private static final String WATCHER_THREAD_NAME = "deployment-watcher";
+
+    private final FileService fileService;
+
+    private final ConcurrentMap<String, Manifest> manifests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<WatchKey, WatchedDirectory> watchedDirectories = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread watcher;
+
+    public DeploymentChangeTracker(FileService fileService) {
+        this.fileService = fileService;
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            log.warn("File watching is not available, deployment changes will be scanned on every request", e);
+            return;
+        }
+        register(RESOURCES, null, fileService.getRootDirectory(RESOURCES));
+        register(VOLUME, null, fileService.getRootDirectory(VOLUME));
+        rescan();
+        watcher = new Thread(this::watch, WATCHER_THREAD_NAME);
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        Optional.ofNullable(watchService).ifPresent(service -> Try.of(service::close).execute());
+    }
+
+    public boolean hasChanges(String functionName) {
+        if (watchService == null)
+            return scan(functionName).hasChanges();
+        return manifests.computeIfAbsent(functionName, this::watchFunction).hasChanges();
+    }
+
+    public void refresh(String functionName) {
+        if (watchService != null)
+            manifests.put(functionName, manifests.containsKey(functionName) ? scan(functionName) : watchFunction(functionName));
+    }
+
+    public void remove(String functionName) {
+        manifests.remove(functionName);
+        watchedDirectories.entrySet().removeIf(entry -> {
+            if (!functionName.equals(entry.getValue().functionName))
+                return false;
+            entry.getKey().cancel();
+            return true;
+        });
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            var directory = watchedDirectories.get(key);
+            if (directory != null)
+                key.pollEvents().forEach(event -> handle(directory, event));
+            if (!key.reset())
+                watchedDirectories.remove(key);
+        }
+    }
+
+    private void handle(WatchedDirectory directory, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            log.warn("Deployment watcher overflowed, rescanning all code functions");
+            rescan();
+            return;
+        }
+        var name = ((Path) event.context()).toString();
+        if (directory.functionName == null) {
+            if (event.kind() == ENTRY_DELETE)
+                Optional.ofNullable(manifests.get(name)).ifPresent(manifest -> manifest.clear(directory.fileType));
+            else if (event.kind() == ENTRY_CREATE && manifests.containsKey(name))
+                manifests.put(name, watchFunction(name));
+            return;
+        }
+        var manifest = manifests.get(directory.functionName);
+        if (manifest == null)
+            return;
+        var file = directory.path.resolve(name).toFile();
+        if (event.kind() == ENTRY_DELETE || !file.exists())
+            manifest.remove(directory.fileType, name);
+        else
+            manifest.put(directory.fileType, name, file.lastModified());
+    }
+
+    private void rescan() {
+        fileService.listDirectories(RESOURCES).forEach(dir -> manifests.put(dir.getName(), watchFunction(dir.getName())));
+        fileService.listDirectories(VOLUME).stream()
+                .map(File::getName)
+                .filter(name -> !manifests.containsKey(name))
+                .forEach(name -> manifests.put(name, watchFunction(name)));
+    }
+
+    private Manifest watchFunction(String functionName) {
+        register(RESOURCES, functionName, fileService.getDirectory(RESOURCES, functionName));
+        register(VOLUME, functionName, fileService.getDirectory(VOLUME, functionName));
+        return scan(functionName);
+    }
+
+    private void register(FileService.FileType fileType, String functionName, File directory) {
+        try {
+            var path = directory.toPath();
+            var key = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            watchedDirectories.put(key, new WatchedDirectory(fileType, functionName, path));
+        } catch (IOException e) {
+            log.warn("Failed to watch {} directory: {}", fileType, directory, e);
+        }
+    }
+
+    private Manifest scan(String functionName) {
+        var manifest = new Manifest();
+        fileService.listFiles(RESOURCES, functionName).forEach(file -> manifest.put(RESOURCES, file.getName(), file.lastModified()));
+        fileService.listFiles(VOLUME, functionName).forEach(file -> manifest.put(VOLUME, file.getName(), file.lastModified()));
+        return manifest;
+    }
+
+    private static class WatchedDirectory {
+        private final FileService.FileType fileType;
+        private final String functionName;
+        private final Path path;
+
+        private WatchedDirectory(FileService.FileType fileType, String functionName, Path path) {
+            this.fileType = fileType;
+            this.functionName = functionName;
+            this.path = path;
+        }
+    }
+
+    private static class Manifest {
+        private final Map<String, Long> resources = new HashMap<>();
+        private final Map<String, Long> volume = new HashMap<>();
+
+        private synchronized void put(FileService.FileType fileType, String fileName, long lastModified) {
+            getFiles(fileType).put(fileName, lastModified);
+        }
+
+        private synchronized void remove(FileService.FileType fileType, String fileName) {
+            getFiles(fileType).remove(fileName);
+        }
+
+        private synchronized void clear(FileService.FileType fileType) {
+            getFiles(fileType).clear();
+        }
+
+        private synchronized boolean hasChanges() {
+            if (resources.size() != volume.size())
+                return true;
+            return resources.entrySet().stream().anyMatch(entry -> {
+                var deployed = volume.get(entry.getKey());
+                return deployed == null || entry.getValue() > deployed;
+            });
+        }
+
+        private Map<String, Long> getFiles(FileService.FileType fileType) {
+            return fileType == RESOURCES ? resources : volume;
+        }
+    }
+}
@@ -3,8 +3,6 @@ package org.yschwartz.sdp.codefunction.service;
 import static org.yschwartz.sdp.common.service.FileService.FileType.RESOURCES;
 import static org.yschwartz.sdp.common.service.FileService.FileType.VOLUME;
 
-import java.io.File;
-
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -20,13 +18,15 @@ public class FunctionDeploymentService {
 
     private final CodeTypeService codeTypeService;
     private final FileService fileService;
+    private final DeploymentChangeTracker deploymentChangeTracker;
 
     @Value("${deploy.retry.delay:200}")
     private int delay;
 
-    public FunctionDeploymentService(CodeTypeService codeTypeService, FileService fileService) {
+    public FunctionDeploymentService(CodeTypeService codeTypeService, FileService fileService, DeploymentChangeTracker deploymentChangeTracker) {
         this.codeTypeService = codeTypeService;
         this.fileService = fileService;
+        this.deploymentChangeTracker = deploymentChangeTracker;
     }
 
     public void createMainFile(CodeFunction codeFunction) {
@@ -38,6 +38,7 @@ public class FunctionDeploymentService {
                 .retry()
                 .fixedDelay(delay)
                 .execute();
+        deploymentChangeTracker.refresh(functionName);
     }
 
     public void deploy(String functionName) {
@@ -52,17 +53,15 @@ public class FunctionDeploymentService {
                 .retry()
                 .fixedDelay(delay)
                 .execute();
+        deploymentChangeTracker.refresh(functionName);
     }
 
     public boolean hasChanges(String functionName) {
-        var resourcesFiles = fileService.listFiles(RESOURCES, functionName);
-        if (resourcesFiles.size() != fileService.listFiles(VOLUME, functionName).size())
-            return true;
-        return resourcesFiles.stream().anyMatch(file -> didFileChange(file, functionName));
+        return deploymentChangeTracker.hasChanges(functionName);
     }
 
-    private boolean didFileChange(File resourceFile, String functionName) {
-        var volumeFile = fileService.getFile(VOLUME, functionName, resourceFile.getName());
-        return !volumeFile.exists() || FileUtils.isFileNewer(resourceFile, volumeFile);
+    public void delete(String functionName) {
+        deploymentChangeTracker.remove(functionName);
+        fileService.deleteAll(functionName);
     }
 }
@@ -32,6 +32,8 @@ public class FunctionValidationService {
 
     @Value("${run.timeout.default:30}")
     private int defaultRunTimeout;
+    @Value("${docker.pool.max:10}")
+    private int maxWarmPoolSize;
 
     public FunctionValidationService(CodeTypeService codeTypeService) {
         this.codeTypeService = codeTypeService;
@@ -55,6 +57,8 @@ public class FunctionValidationService {
                 .then(validateField("name", codeFunction.getName().matches(FUNCTION_NAME_REGEX)))
                 .then(validateNotEmpty("codeTypeName", codeFunction.getCodeTypeName()))
                 .then(validateRunTimeout(codeFunction.getRunTimeout()))
+                .then(validateWarmPoolSize(codeFunction.getWarmPoolSize()))
+                .then(validateMaxConcurrency(codeFunction.getMaxConcurrency()))
                 .then(validateSchedule(codeFunction.getSchedule()))
                 .then(validateVolumes(codeFunction.getVolumes()))
                 .then(validateLists(codeFunction))
@@ -66,6 +70,8 @@ public class FunctionValidationService {
                 .then(validateSchedule(codeFunction.getSchedule()))
                 .then(validateVolumes(codeFunction.getVolumes()))
                 .then(validateRunTimeout(codeFunction.getRunTimeout()))
+                .then(validateWarmPoolSize(codeFunction.getWarmPoolSize()))
+                .then(validateMaxConcurrency(codeFunction.getMaxConcurrency()))
                 .then(validateLists(codeFunction))
                 .then(validateCodeTypeNullOrExists(codeFunction.getCodeTypeName()));
     }
@@ -104,6 +110,7 @@ public class FunctionValidationService {
         getOrCreate(codeFunction, CodeFunction::getNetworkMode, CodeFunction::setNetworkMode, () -> CodeFunction.NetworkMode.NONE);
         getOrCreate(codeFunction, CodeFunction::getPrivileged, CodeFunction::setPrivileged, () -> false);
         getOrCreate(codeFunction, CodeFunction::getRunTimeout, CodeFunction::setRunTimeout, () -> defaultRunTimeout);
+        getOrCreate(codeFunction, CodeFunction::getWarmPoolSize, CodeFunction::setWarmPoolSize, () -> 0);
     }
 
     private static Mono<Void> validateNotNull(String fieldName, Object value) {
@@ -114,6 +121,14 @@ public class FunctionValidationService {
         return validateField("runTimeout", value == null || value > 0);
     }
 
+    private Mono<Void> validateWarmPoolSize(Integer value) {
+        return validateField("warmPoolSize", value == null || (value >= 0 && value <= maxWarmPoolSize));
+    }
+
+    private static Mono<Void> validateMaxConcurrency(Integer value) {
+        return validateField("maxConcurrency", value == null || value > 0);
+    }
+
     private static Mono<Void> validateDelay(long value) {
         return validateField("schedule.delay", value > 0);
     }
@@ -125,9 +140,10 @@ public class FunctionValidationService {
     private static Mono<Void> validateSchedule(BaseSchedule schedule) {
         if (schedule == null)
             return Mono.empty();
+        var validateJitter = validateField("schedule.jitter", schedule.getJitter() == null || schedule.getJitter() >= 0);
         if (schedule instanceof CronSchedule)
-            return validateField("schedule.cron", isValidExpression(((CronSchedule) schedule).getCron()));
-        return validateDelay(((FixedDelaySchedule) schedule).getDelay())
+            return validateJitter.then(validateField("schedule.cron", isValidExpression(((CronSchedule) schedule).getCron())));
+        return validateJitter.then(validateDelay(((FixedDelaySchedule) schedule).getDelay()))
                 .then(validateNotNull("schedule.timeUnit", ((FixedDelaySchedule) schedule).getTimeUnit()));
     }
 
@@ -183,6 +199,8 @@ public class FunctionValidationService {
         setIfNotNull(oldFunction, newFunction.getNetworkMode(), CodeFunction::setNetworkMode);
         setIfNotNull(oldFunction, newFunction.getPrivileged(), CodeFunction::setPrivileged);
         setIfNotNull(oldFunction, newFunction.getRunTimeout(), CodeFunction::setRunTimeout);
+        setIfNotNull(oldFunction, newFunction.getWarmPoolSize(), CodeFunction::setWarmPoolSize);
+        setIfNotNull(oldFunction, newFunction.getMaxConcurrency(), CodeFunction::setMaxConcurrency);
         setIfNotNull(oldFunction, newFunction.getSchedule(), CodeFunction::setSchedule);
         return oldFunction;
     }
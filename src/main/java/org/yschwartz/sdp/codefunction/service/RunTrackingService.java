@@ -0,0 +1,108 @@
+package org.yschwartz.sdp.codefunction.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.schedule.model.BaseSchedule;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.Disposable;
+
+@Service
+@Log4j2
+public class RunTrackingService {
+    private static final String SKIPPED_METRIC = "sdp.schedule.skipped";
+    private static final String CANCELLED_METRIC = "sdp.schedule.cancelled";
+    private static final String FUNCTION_TAG = "function";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, FunctionRuns> runs = new ConcurrentHashMap<>();
+
+    public RunTrackingService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Decision onFire(String functionName, BaseSchedule.OverlapPolicy policy, Runnable fire) {
+        var functionRuns = getRuns(functionName);
+        List<Disposable> cancelled;
+        synchronized (functionRuns) {
+            if (functionRuns.active.isEmpty() || policy == null || policy == BaseSchedule.OverlapPolicy.ALLOW)
+                return Decision.FIRE;
+            switch (policy) {
+                case QUEUE_ONE:
+                    if (functionRuns.pending != null)
+                        return skip(functionName);
+                    functionRuns.pending = fire;
+                    log.debug("Queued scheduled fire of code function: {}", functionName);
+                    return Decision.QUEUED;
+                case CANCEL_PREVIOUS:
+                    cancelled = List.copyOf(functionRuns.active.values());
+                    break;
+                default:
+                    return skip(functionName);
+            }
+        }
+        log.info("Cancelling {} running instances of code function: {}", cancelled.size(), functionName);
+        meterRegistry.counter(CANCELLED_METRIC, FUNCTION_TAG, functionName).increment(cancelled.size());
+        cancelled.forEach(Disposable::dispose);
+        return Decision.FIRE;
+    }
+
+    public void start(String functionName, String containerName, Disposable run) {
+        var functionRuns = getRuns(functionName);
+        synchronized (functionRuns) {
+            functionRuns.active.put(containerName, run);
+        }
+    }
+
+    public void complete(String functionName, String containerName) {
+        var functionRuns = getRuns(functionName);
+        Runnable pending = null;
+        synchronized (functionRuns) {
+            if (functionRuns.active.remove(containerName) != null && functionRuns.active.isEmpty()) {
+                pending = functionRuns.pending;
+                functionRuns.pending = null;
+            }
+        }
+        Optional.ofNullable(pending).ifPresent(Runnable::run);
+    }
+
+    public int getRunning(String functionName) {
+        var functionRuns = getRuns(functionName);
+        synchronized (functionRuns) {
+            return functionRuns.active.size();
+        }
+    }
+
+    public void clear(String functionName) {
+        Optional.ofNullable(runs.remove(functionName)).ifPresent(functionRuns -> {
+            synchronized (functionRuns) {
+                functionRuns.pending = null;
+            }
+        });
+    }
+
+    private Decision skip(String functionName) {
+        log.debug("Skipped scheduled fire of code function: {}", functionName);
+        meterRegistry.counter(SKIPPED_METRIC, FUNCTION_TAG, functionName).increment();
+        return Decision.SKIPPED;
+    }
+
+    private FunctionRuns getRuns(String functionName) {
+        return runs.computeIfAbsent(functionName, name -> new FunctionRuns());
+    }
+
+    public enum Decision {FIRE, QUEUED, SKIPPED}
+
+    private static class FunctionRuns {
+        private final Map<String, Disposable> active = new LinkedHashMap<>();
+        private Runnable pending;
+    }
+}
@@ -2,9 +2,15 @@ package org.yschwartz.sdp.common.config;
 
 public class Constants {
     public static final String IMAGE_TAG = "serverless-docker-platform/%s";
+    public static final String BASE_IMAGE_TAG = "serverless-docker-platform-base/%s:%s";
+    public static final String BASE_DOCKERFILE_PREFIX = ".base-";
+    public static final String DOCKERFILE_NAME = "Dockerfile";
+    public static final String UPSTREAM_IMAGE_LABEL = "org.yschwartz.sdp.upstream";
+    public static final String BASE_IMAGE_LABEL = "org.yschwartz.sdp.base";
     public static final String CONTAINER_ROOT = "/sdp";
     public static final String ROOT_DIR = "sdp";
     public static final String CONTAINER_NAME_DELIMITER = "_._";
+    public static final String POOL_CONTAINER_PREFIX = "pool-";
     public static final String LOG_FILE_SUFFIX = ".log";
     public static final String NEW_LINE = System.lineSeparator();
 }
@@ -39,6 +39,10 @@ public class FileService {
         return getFile(fileType, true, functionName);
     }
 
+    public File getRootDirectory(FileType fileType) {
+        return getFile(fileType, true);
+    }
+
     public void deleteAll(String functionName) {
         Arrays.stream(FileType.values()).forEach(type -> deleteDirFiles(type, functionName, true));
     }
@@ -54,7 +58,7 @@ public class FileService {
     }
 
     public List<File> listDirectories(FileType fileType) {
-        return list(getFile(fileType, true));
+        return list(getRootDirectory(fileType));
     }
 
     public List<File> list(File file) {
@@ -3,6 +3,7 @@ package org.yschwartz.sdp.common.util;
 import static org.yschwartz.sdp.common.config.Constants.*;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -23,10 +24,22 @@ public class StringUtils {
         return functionName + CONTAINER_NAME_DELIMITER + getFormattedTimestamp(LocalDateTime.now());
     }
 
+    public static String createPoolContainerName(String functionName) {
+        return functionName + CONTAINER_NAME_DELIMITER + POOL_CONTAINER_PREFIX + UUID.randomUUID();
+    }
+
     public static String getTimestampFromLogFileName(String fileName) {
         return org.apache.commons.lang.StringUtils.substringBetween(fileName, CONTAINER_NAME_DELIMITER, LOG_FILE_SUFFIX);
     }
 
+    public static String getTimestampFromContainerName(String containerName) {
+        return org.apache.commons.lang.StringUtils.substringAfter(containerName, CONTAINER_NAME_DELIMITER);
+    }
+
+    public static String getFunctionName(String containerName) {
+        return containerName.split(CONTAINER_NAME_DELIMITER)[0];
+    }
+
     public static String getFormattedTimestamp(LocalDateTime time) {
         return time.toString().replace(':', '-');
     }
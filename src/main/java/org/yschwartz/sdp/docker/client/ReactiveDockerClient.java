@@ -1,90 +1,147 @@
 package org.yschwartz.sdp.docker.client;
 
-import static org.yschwartz.sdp.common.config.Constants.IMAGE_TAG;
-
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
-import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.yschwartz.sdp.docker.exception.ContainerNotFoundException;
 import org.yschwartz.sdp.docker.model.Action;
+import org.yschwartz.sdp.docker.model.BuildContext;
+import org.yschwartz.sdp.docker.model.DockerHost;
+import org.yschwartz.sdp.docker.service.DockerHostService;
+import org.yschwartz.try_utils.model.Try;
 
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.command.AsyncDockerCmd;
 import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.command.SyncDockerCmd;
 import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.DockerObject;
 import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.WaitResponse;
 
 import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.MonoSink;
 
 @Service
 @Log4j2
 public class ReactiveDockerClient {
-    private final DockerClient dockerClient;
+    private static final String CONTAINER_NAME_PREFIX = "/";
+
+    private final DockerHostService dockerHostService;
 
     @Value("${docker.client.retries:3}")
     private int retries;
 
-    public ReactiveDockerClient(DockerClient dockerClient) {
-        this.dockerClient = dockerClient;
+    public ReactiveDockerClient(DockerHostService dockerHostService) {
+        this.dockerHostService = dockerHostService;
     }
 
-    public Mono<Void> pull(String image) {
-        return exec(dockerClient.pullImageCmd(image), image, Action.PULL);
+    public Mono<Void> pull(DockerHost host, String image) {
+        return exec(host.getClient().pullImageCmd(image), image, Action.PULL);
+    }
+
+    public Mono<InspectImageResponse> build(DockerHost host, BuildContext context, String identifier, String image, Map<String, String> labels) {
+        return exec(() -> host.getClient().buildImageCmd(new ByteArrayInputStream(context.getContent())).withTags(Set.of(image)).withLabels(labels),
+                identifier,
+                Action.BUILD,
+                x -> null,
+                null)
+                .then(getImage(host, image));
     }
 
-    public Mono<Void> build(File dockerfile, String functionName) {
-        return exec(dockerClient.buildImageCmd(dockerfile).withTags(Set.of(IMAGE_TAG.formatted(functionName))), functionName, Action.BUILD)
-                .then(validateImageCreated(functionName))
-                .then();
+    public Mono<Void> removeImage(DockerHost host, String image) {
+        return exec(host.getClient().removeImageCmd(image), image, Action.REMOVE_IMAGE);
     }
 
-    public Mono<Void> create(CreateContainerCmd command, String containerName) {
-        return exec(command, containerName, Action.CREATE);
+    public Mono<InspectImageResponse> getImage(DockerHost host, String image) {
+        return exec(host.getClient().inspectImageCmd(image),
+                image,
+                Action.GET_IMAGE,
+                Function.identity());
+    }
+
+    public Mono<Void> create(DockerHost host, CreateContainerCmd command, String containerName) {
+        return exec(command, containerName, Action.CREATE)
+                .doOnSuccess(x -> dockerHostService.setOwner(containerName, host));
     }
 
     public Mono<Void> start(String containerName) {
-        return exec(dockerClient.startContainerCmd(containerName), containerName, Action.START);
+        return getClient(containerName).flatMap(client -> exec(client.startContainerCmd(containerName), containerName, Action.START));
     }
 
     public Mono<Void> logs(String containerName, Consumer<Frame> logHandler) {
-        return exec(dockerClient.logContainerCmd(containerName).withStdOut(true).withStdErr(true).withTimestamps(true).withFollowStream(true).withTailAll(),
+        return getClient(containerName).flatMap(client -> exec(client.logContainerCmd(containerName).withStdOut(true).withStdErr(true).withTimestamps(true).withFollowStream(true).withTailAll(),
                 containerName,
                 Action.LOGS,
                 x -> null,
-                logHandler);
+                logHandler));
     }
 
-    public Mono<Container> get(String containerName) {
-        return exec(dockerClient.listContainersCmd().withNameFilter(List.of(containerName)).withShowAll(true),
-                containerName,
-                Action.GET,
-                list -> list.stream().findFirst().orElseThrow(() -> new ContainerNotFoundException(containerName)));
+    public Mono<Void> copy(String containerName, Path archive, String remotePath) {
+        return getClient(containerName).flatMap(client -> Mono.using(() -> Files.newInputStream(archive),
+                tar -> exec(client.copyArchiveToContainerCmd(containerName).withTarInputStream(tar).withRemotePath(remotePath),
+                        containerName,
+                        Action.COPY),
+                tar -> Try.of(tar::close).execute()));
+    }
+
+    public Mono<Integer> waitForExit(String containerName) {
+        return getClient(containerName).flatMap(client -> exec(client.waitContainerCmd(containerName), containerName, Action.WAIT, WaitResponse::getStatusCode, null));
+    }
+
+    public Mono<List<Container>> list(DockerHost host, String nameFilter) {
+        return exec(host.getClient().listContainersCmd().withNameFilter(List.of(nameFilter)).withShowAll(true),
+                nameFilter,
+                Action.LIST,
+                Function.identity());
+    }
+
+    public Mono<Void> rename(String containerName, String newName) {
+        return getClient(containerName).flatMap(client -> exec(client.renameContainerCmd(containerName).withName(newName), containerName, Action.RENAME))
+                .doOnSuccess(x -> dockerHostService.moveOwner(containerName, newName));
     }
 
     public Mono<Void> stop(String containerName) {
-        return exec(dockerClient.stopContainerCmd(containerName), containerName, Action.STOP);
+        return getClient(containerName).flatMap(client -> exec(client.stopContainerCmd(containerName), containerName, Action.STOP));
     }
 
     public Mono<Void> remove(String containerName) {
-        return exec(dockerClient.removeContainerCmd(containerName), containerName, Action.REMOVE);
+        return getClient(containerName).flatMap(client -> exec(client.removeContainerCmd(containerName), containerName, Action.REMOVE))
+                .doOnSuccess(x -> dockerHostService.removeOwner(containerName));
     }
 
-    private Mono<Void> validateImageCreated(String functionName) {
-        return exec(dockerClient.inspectImageCmd(IMAGE_TAG.formatted(functionName)),
-                functionName,
-                Action.GET_IMAGE);
+    private Mono<DockerClient> getClient(String containerName) {
+        return Mono.defer(() -> Mono.justOrEmpty(dockerHostService.findOwner(containerName)))
+                .switchIfEmpty(Mono.defer(() -> findOwner(containerName)))
+                .map(DockerHost::getClient);
+    }
+
+    private Mono<DockerHost> findOwner(String containerName) {
+        var name = CONTAINER_NAME_PREFIX + containerName;
+        return Flux.fromIterable(dockerHostService.getHosts())
+                .concatMap(host -> list(host, containerName)
+                        .onErrorResume(e -> Mono.empty())
+                        .filter(containers -> containers.stream().anyMatch(container -> Arrays.asList(container.getNames()).contains(name)))
+                        .map(x -> host))
+                .next()
+                .doOnNext(host -> dockerHostService.setOwner(containerName, host))
+                .switchIfEmpty(Mono.error(() -> new ContainerNotFoundException(containerName)));
     }
 
     private <A extends DockerObject> Mono<Void> exec(AsyncDockerCmd<?, A> command, String identifier, Action action) {
@@ -92,7 +149,14 @@ public class ReactiveDockerClient {
     }
 
     private <A extends DockerObject, R> Mono<R> exec(AsyncDockerCmd<?, A> command, String identifier, Action action, Function<A, R> returnValueMapper, Consumer<A> onNextHook) {
-        Mono<A> mono = Mono.create(sink -> command.exec(new Callback<>(sink, identifier, action, onNextHook)));
+        return exec(() -> command, identifier, action, returnValueMapper, onNextHook);
+    }
+
+    private <A extends DockerObject, R> Mono<R> exec(Supplier<? extends AsyncDockerCmd<?, A>> commandSupplier, String identifier, Action action, Function<A, R> returnValueMapper, Consumer<A> onNextHook) {
+        Mono<A> mono = Mono.create(sink -> {
+            var callback = commandSupplier.get().exec(new Callback<>(sink, identifier, action, onNextHook));
+            sink.onCancel(() -> Try.of(callback::close).execute());
+        });
         return mono.retry(retries).mapNotNull(returnValueMapper);
     }
 
@@ -1,10 +1,15 @@
 package org.yschwartz.sdp.docker.config;
 
 import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.yschwartz.sdp.docker.model.DockerHost;
 
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
@@ -18,10 +23,28 @@ public class DockerConfig {
     private String host;
     @Value("${docker.port:2375}")
     private int port;
+    @Value("${docker.hosts:}")
+    private String[] hosts;
+    @Value("${docker.hosts.shared-filesystem:}")
+    private String[] sharedFilesystemHosts;
 
     @Bean
-    public DockerClient dockerClient() {
-        String uri = "tcp://%s:%d".formatted(host, port);
+    public List<DockerHost> dockerHosts() {
+        var endpoints = Arrays.stream(hosts)
+                .map(String::trim)
+                .filter(Predicate.not(String::isBlank))
+                .collect(Collectors.toList());
+        if (endpoints.isEmpty()) {
+            var endpoint = "%s:%d".formatted(host, port);
+            return List.of(new DockerHost(endpoint, dockerClient(endpoint), true));
+        }
+        return endpoints.stream()
+                .map(endpoint -> new DockerHost(endpoint, dockerClient(endpoint), Arrays.asList(sharedFilesystemHosts).contains(endpoint)))
+                .collect(Collectors.toList());
+    }
+
+    private static DockerClient dockerClient(String endpoint) {
+        String uri = "tcp://%s".formatted(endpoint);
         var config = DefaultDockerClientConfig.createDefaultConfigBuilder()
                 .withDockerHost(uri)
                 .build();
@@ -0,0 +1,9 @@
+package org.yschwartz.sdp.docker.exception;
+
+public class DockerCopyException extends BaseDockerException {
+    private static final String MESSAGE = "Failed to copy files to container: %s";
+
+    public DockerCopyException(String containerName, Throwable cause) {
+        super(cause, MESSAGE, containerName);
+    }
+}
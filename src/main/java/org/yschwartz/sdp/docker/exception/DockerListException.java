@@ -0,0 +1,9 @@
+package org.yschwartz.sdp.docker.exception;
+
+public class DockerListException extends BaseDockerException {
+    private static final String MESSAGE = "Failed to list containers: %s";
+
+    public DockerListException(String filter, Throwable cause) {
+        super(cause, MESSAGE, filter);
+    }
+}
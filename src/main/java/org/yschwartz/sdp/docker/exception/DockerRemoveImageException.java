@@ -0,0 +1,9 @@
+package org.yschwartz.sdp.docker.exception;
+
+public class DockerRemoveImageException extends BaseDockerException {
+    private static final String MESSAGE = "Failed to remove image: %s";
+
+    public DockerRemoveImageException(String image, Throwable cause) {
+        super(cause, MESSAGE, image);
+    }
+}
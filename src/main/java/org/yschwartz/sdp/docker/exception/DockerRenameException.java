@@ -0,0 +1,9 @@
+package org.yschwartz.sdp.docker.exception;
+
+public class DockerRenameException extends BaseDockerException {
+    private static final String MESSAGE = "Failed to rename container: %s";
+
+    public DockerRenameException(String containerName, Throwable cause) {
+        super(cause, MESSAGE, containerName);
+    }
+}
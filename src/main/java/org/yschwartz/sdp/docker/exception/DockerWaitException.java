@@ -0,0 +1,9 @@
+package org.yschwartz.sdp.docker.exception;
+
+public class DockerWaitException extends BaseDockerException {
+    private static final String MESSAGE = "Failed to wait for container: %s";
+
+    public DockerWaitException(String containerName, Throwable cause) {
+        super(cause, MESSAGE, containerName);
+    }
+}
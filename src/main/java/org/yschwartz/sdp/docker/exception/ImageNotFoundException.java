@@ -0,0 +1,13 @@
+package org.yschwartz.sdp.docker.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class ImageNotFoundException extends BaseDockerException {
+    private static final String MESSAGE = "Image of code function: %s not found on host: %s";
+
+    public ImageNotFoundException(String functionName, String host) {
+        super(MESSAGE, functionName, host);
+    }
+}
@@ -1,23 +1,31 @@
 package org.yschwartz.sdp.docker.mapper;
 
 import static org.yschwartz.sdp.common.config.Constants.CONTAINER_ROOT;
-import static org.yschwartz.sdp.common.config.Constants.IMAGE_TAG;
 import static org.yschwartz.sdp.common.service.FileService.FileType.VOLUME;
 import static org.yschwartz.sdp.common.util.FunctionalUtil.getOrCreate;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.yschwartz.sdp.codefunction.model.CodeFunction;
 import org.yschwartz.sdp.common.service.FileService;
+import org.yschwartz.sdp.docker.exception.ImageNotFoundException;
+import org.yschwartz.sdp.docker.model.DockerHost;
+import org.yschwartz.sdp.docker.service.DockerHostService;
 
-import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.model.AccessMode;
 import com.github.dockerjava.api.model.Bind;
@@ -26,34 +34,60 @@ import com.github.dockerjava.api.model.Volume;
 
 @Component
 public class DockerInputMapper {
-    private final DockerClient dockerClient;
+    private static final String TAR_SUFFIX = ".tar";
+
     private final FileService fileService;
+    private final DockerHostService dockerHostService;
 
     @Value("${path.volume:}")
     private String volumePath;
 
-    public DockerInputMapper(DockerClient dockerClient, FileService fileService) {
-        this.dockerClient = dockerClient;
+    public DockerInputMapper(FileService fileService, DockerHostService dockerHostService) {
         this.fileService = fileService;
+        this.dockerHostService = dockerHostService;
     }
 
-    public CreateContainerCmd mapCodeFunctionToCreateCommandInput(CodeFunction codeFunction, String containerName) {
+    public CreateContainerCmd mapCodeFunctionToCreateCommandInput(DockerHost host, CodeFunction codeFunction, String containerName) {
         var functionName = codeFunction.getName();
-        var command = dockerClient.createContainerCmd(IMAGE_TAG.formatted(functionName)).withName(containerName);
+        var image = dockerHostService.getImage(host, functionName).orElseThrow(() -> new ImageNotFoundException(functionName, host.getId()));
+        var command = host.getClient().createContainerCmd(image).withName(containerName);
         var hostConfig = getOrCreate(command, CreateContainerCmd::getHostConfig, CreateContainerCmd::withHostConfig, HostConfig::newHostConfig);
         command.withEnv(codeFunction.getEnvironmentVariables().stream().map(entry -> "%s=%s" .formatted(entry.getKey(), entry.getValue())).collect(Collectors.toList()));
-        setVolumes(hostConfig, codeFunction.getVolumes(), functionName);
+        setVolumes(hostConfig, codeFunction.getVolumes(), functionName, host.isSharedFilesystem());
         hostConfig.withNetworkMode(codeFunction.getNetworkMode().toString().toLowerCase()).withPrivileged(codeFunction.getPrivileged());
         return command;
     }
 
-    private void setVolumes(HostConfig hostConfig, List<CodeFunction.Volume> volumes, String functionName) {
-        var hostPath = Optional.ofNullable(volumePath)
-                .filter(Predicate.not(String::isBlank))
-                .map(path -> new File(path, functionName))
-                .orElseGet(() -> fileService.getDirectory(VOLUME, functionName))
-                .getAbsolutePath();
-        var binds = new LinkedList<>(List.of(getBind(hostPath, CONTAINER_ROOT, false)));
+    public Path mapVolumeToArchive(String functionName) throws IOException {
+        var root = fileService.getDirectory(VOLUME, functionName).toPath();
+        var rootName = Path.of(CONTAINER_ROOT).getFileName().toString();
+        var archive = Files.createTempFile(functionName, TAR_SUFFIX);
+        try (var tar = new TarArchiveOutputStream(new BufferedOutputStream(Files.newOutputStream(archive))); Stream<Path> paths = Files.walk(root)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (var path : (Iterable<Path>) paths::iterator) {
+                var entryName = Path.of(rootName).resolve(root.relativize(path)).toString();
+                tar.putArchiveEntry(tar.createArchiveEntry(path.toFile(), entryName));
+                if (Files.isRegularFile(path))
+                    Files.copy(path, tar);
+                tar.closeArchiveEntry();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(archive);
+            throw e;
+        }
+        return archive;
+    }
+
+    private void setVolumes(HostConfig hostConfig, List<CodeFunction.Volume> volumes, String functionName, boolean sharedFilesystem) {
+        var binds = new LinkedList<Bind>();
+        if (sharedFilesystem) {
+            var hostPath = Optional.ofNullable(volumePath)
+                    .filter(Predicate.not(String::isBlank))
+                    .map(path -> new File(path, functionName))
+                    .orElseGet(() -> fileService.getDirectory(VOLUME, functionName))
+                    .getAbsolutePath();
+            binds.add(getBind(hostPath, CONTAINER_ROOT, false));
+        }
         volumes.stream()
                 .map(volume -> getBind(volume.getHostPath(), volume.getContainerPath(), volume.isReadOnly()))
                 .forEach(binds::add);
@@ -3,7 +3,7 @@ package org.yschwartz.sdp.docker.model;
 import org.yschwartz.sdp.docker.exception.*;
 
 public enum Action {
-    PULL, BUILD, CREATE, START, LOGS, GET, STOP, REMOVE, GET_IMAGE;
+    PULL, BUILD, CREATE, START, LOGS, STOP, REMOVE, GET_IMAGE, RENAME, LIST, WAIT, REMOVE_IMAGE, COPY;
 
     public RuntimeException getDockerException(Throwable t, String arg) {
         switch (this) {
@@ -22,9 +22,6 @@ public enum Action {
             case LOGS -> {
                 return new DockerLogsException(arg, t);
             }
-            case GET -> {
-                return new DockerGetException(arg, t);
-            }
             case STOP -> {
                 return new DockerStopException(arg, t);
             }
@@ -34,6 +31,21 @@ public enum Action {
             case GET_IMAGE -> {
                 return new DockerGetImageException(arg, t);
             }
+            case RENAME -> {
+                return new DockerRenameException(arg, t);
+            }
+            case LIST -> {
+                return new DockerListException(arg, t);
+            }
+            case WAIT -> {
+                return new DockerWaitException(arg, t);
+            }
+            case REMOVE_IMAGE -> {
+                return new DockerRemoveImageException(arg, t);
+            }
+            case COPY -> {
+                return new DockerCopyException(arg, t);
+            }
         }
         return new RuntimeException();
     }
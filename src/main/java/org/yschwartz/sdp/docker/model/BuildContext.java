@@ -0,0 +1,12 @@
+package org.yschwartz.sdp.docker.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class BuildContext {
+    private final int hash;
+    private final String inputsHash;
+    private final byte[] content;
+}
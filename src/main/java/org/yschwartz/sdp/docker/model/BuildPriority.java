@@ -0,0 +1,5 @@
+package org.yschwartz.sdp.docker.model;
+
+public enum BuildPriority {
+    FOREGROUND, BACKGROUND
+}
@@ -0,0 +1,22 @@
+package org.yschwartz.sdp.docker.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+
+@Data
+@Document
+public class BuildRecord {
+    @Id
+    private String id;
+    private String hostId;
+    private String functionName;
+    private String inputsHash;
+    private String imageTag;
+    private String imageId;
+    private String baseImageDigest;
+    private LocalDateTime buildTime;
+}
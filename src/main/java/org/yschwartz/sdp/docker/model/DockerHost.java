@@ -0,0 +1,25 @@
+package org.yschwartz.sdp.docker.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.dockerjava.api.DockerClient;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class DockerHost {
+    private final String id;
+    private final DockerClient client;
+    private final boolean sharedFilesystem;
+    private final AtomicInteger running = new AtomicInteger();
+    private final ConcurrentMap<String, String> functionImages = new ConcurrentHashMap<>();
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
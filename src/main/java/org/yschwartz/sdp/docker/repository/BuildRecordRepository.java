@@ -0,0 +1,15 @@
+package org.yschwartz.sdp.docker.repository;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import org.yschwartz.sdp.docker.model.BuildRecord;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface BuildRecordRepository extends ReactiveMongoRepository<BuildRecord, String> {
+    Flux<BuildRecord> findAllByFunctionName(String functionName);
+
+    Mono<Long> countByHostIdAndImageTag(String hostId, String imageTag);
+}
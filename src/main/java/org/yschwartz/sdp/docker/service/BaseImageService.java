@@ -0,0 +1,68 @@
+package org.yschwartz.sdp.docker.service;
+
+import static org.yschwartz.sdp.common.config.Constants.UPSTREAM_IMAGE_LABEL;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.codetype.model.CodeType;
+import org.yschwartz.sdp.docker.client.ReactiveDockerClient;
+import org.yschwartz.sdp.docker.model.DockerHost;
+
+import com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.dockerjava.api.model.ContainerConfig;
+
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Mono;
+
+@Service
+@Log4j2
+public class BaseImageService {
+    private final ReactiveDockerClient reactiveDockerClient;
+    private final DockerfileService dockerfileService;
+
+    private final ConcurrentMap<String, Mono<InspectImageResponse>> builds = new ConcurrentHashMap<>();
+
+    public BaseImageService(ReactiveDockerClient reactiveDockerClient, DockerfileService dockerfileService) {
+        this.reactiveDockerClient = reactiveDockerClient;
+        this.dockerfileService = dockerfileService;
+    }
+
+    public Mono<InspectImageResponse> build(DockerHost host, CodeType codeType) {
+        var image = dockerfileService.getBaseImage(codeType);
+        var key = "%s/%s".formatted(host.getId(), image);
+        return Mono.defer(() -> builds.computeIfAbsent(key, k -> getUpstreamImage(host, codeType)
+                .flatMap(upstream -> getUpToDateImage(host, image, upstream.getId())
+                        .switchIfEmpty(Mono.defer(() -> build(host, codeType, image, upstream.getId()))))
+                .doFinally(x -> builds.remove(k))
+                .cache()));
+    }
+
+    private Mono<InspectImageResponse> getUpstreamImage(DockerHost host, CodeType codeType) {
+        return reactiveDockerClient.getImage(host, codeType.getFrom())
+                .onErrorResume(e -> reactiveDockerClient.pull(host, codeType.getFrom())
+                        .then(reactiveDockerClient.getImage(host, codeType.getFrom())));
+    }
+
+    private Mono<InspectImageResponse> getUpToDateImage(DockerHost host, String image, String upstreamId) {
+        return reactiveDockerClient.getImage(host, image)
+                .filter(response -> upstreamId.equals(getLabel(response, UPSTREAM_IMAGE_LABEL)))
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    private Mono<InspectImageResponse> build(DockerHost host, CodeType codeType, String image, String upstreamId) {
+        return Mono.fromCallable(() -> dockerfileService.getBaseBuildContext(codeType))
+                .flatMap(context -> reactiveDockerClient.build(host, context, image, image, Map.of(UPSTREAM_IMAGE_LABEL, upstreamId)))
+                .doOnSuccess(x -> log.info("Built base image: {} for code type: {} on host: {}", image, codeType.getName(), host));
+    }
+
+    static String getLabel(InspectImageResponse image, String label) {
+        return Optional.ofNullable(image.getConfig())
+                .map(ContainerConfig::getLabels)
+                .map(labels -> labels.get(label))
+                .orElse(null);
+    }
+}
@@ -0,0 +1,134 @@
+package org.yschwartz.sdp.docker.service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.docker.model.BuildPriority;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+@Service
+@Log4j2
+public class BuildExecutor {
+    private static final String QUEUED_METRIC = "sdp.builds.queued";
+    private static final String RUNNING_METRIC = "sdp.builds.active";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<BuildPriority, Deque<Task>> queues = new EnumMap<>(BuildPriority.class);
+    private final Map<String, Task> tasks = new HashMap<>();
+    private int running;
+
+    @Value("${docker.build.parallelism:4}")
+    private int parallelism;
+
+    public BuildExecutor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Arrays.stream(BuildPriority.values()).forEach(priority -> queues.put(priority, new ArrayDeque<>()));
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        meterRegistry.gauge(QUEUED_METRIC, this, BuildExecutor::getQueued);
+        meterRegistry.gauge(RUNNING_METRIC, this, BuildExecutor::getRunning);
+    }
+
+    public Mono<Void> submit(String key, BuildPriority priority, boolean force, Function<Boolean, Mono<Void>> build) {
+        return Mono.defer(() -> {
+            var granted = new LinkedList<Task>();
+            Task task;
+            synchronized (this) {
+                task = tasks.computeIfAbsent(key, k -> enqueue(new Task(k, priority, force, build)));
+                if (force && !task.force) {
+                    if (task.started)
+                        return task.result.onErrorResume(e -> Mono.empty()).then(submit(key, priority, true, build));
+                    task.force = true;
+                    log.debug("Forced queued build: {}", key);
+                }
+                if (!task.started && priority.compareTo(task.priority) < 0) {
+                    queues.get(task.priority).remove(task);
+                    task.priority = priority;
+                    queues.get(priority).addLast(task);
+                    log.debug("Promoted build: {} to priority: {}", key, priority);
+                }
+                dispatch(granted);
+            }
+            granted.forEach(Task::grant);
+            return task.result;
+        });
+    }
+
+    public synchronized int getQueued() {
+        return queues.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    private Task enqueue(Task task) {
+        queues.get(task.priority).addLast(task);
+        return task;
+    }
+
+    private void complete(Task task) {
+        var granted = new LinkedList<Task>();
+        synchronized (this) {
+            tasks.remove(task.key, task);
+            if (task.started)
+                running--;
+            else
+                queues.get(task.priority).remove(task);
+            dispatch(granted);
+        }
+        granted.forEach(Task::grant);
+    }
+
+    private void dispatch(List<Task> granted) {
+        for (var queue : queues.values()) {
+            while (running < parallelism && !queue.isEmpty()) {
+                var task = queue.pollFirst();
+                task.started = true;
+                running++;
+                granted.add(task);
+            }
+        }
+    }
+
+    private class Task {
+        private final String key;
+        private final Sinks.Empty<Void> grant = Sinks.empty();
+        private final Mono<Void> result;
+        private BuildPriority priority;
+        private volatile boolean force;
+        private boolean started;
+
+        private Task(String key, BuildPriority priority, boolean force, Function<Boolean, Mono<Void>> build) {
+            this.key = key;
+            this.priority = priority;
+            this.force = force;
+            this.result = grant.asMono()
+                    .then(Mono.defer(() -> build.apply(this.force)))
+                    .doOnTerminate(() -> complete(this))
+                    .cache();
+        }
+
+        private void grant() {
+            grant.tryEmitEmpty();
+        }
+    }
+}
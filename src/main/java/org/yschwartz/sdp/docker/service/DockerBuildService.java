@@ -1,75 +1,193 @@
 package org.yschwartz.sdp.docker.service;
 
-import java.time.Duration;
-import java.util.HashMap;
+import static org.yschwartz.sdp.common.config.Constants.BASE_IMAGE_LABEL;
+import static org.yschwartz.sdp.common.config.Constants.IMAGE_TAG;
+
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.yschwartz.sdp.codefunction.model.CodeFunction;
+import org.yschwartz.sdp.codetype.service.CodeTypeService;
 import org.yschwartz.sdp.docker.client.ReactiveDockerClient;
-import org.yschwartz.sdp.docker.exception.DockerBuildAlreadyInProgressException;
+import org.yschwartz.sdp.docker.model.BuildContext;
+import org.yschwartz.sdp.docker.model.BuildPriority;
+import org.yschwartz.sdp.docker.model.BuildRecord;
+import org.yschwartz.sdp.docker.model.DockerHost;
+import org.yschwartz.sdp.docker.repository.BuildRecordRepository;
+
+import com.github.dockerjava.api.command.InspectImageResponse;
 
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
 
 @Service
+@Log4j2
 public class DockerBuildService {
+    private static final String EXECUTOR_KEY = "%s@%s";
+
     private final ReactiveDockerClient reactiveDockerClient;
     private final DockerfileService dockerfileService;
+    private final DockerHostService dockerHostService;
+    private final WarmPoolService warmPoolService;
+    private final BaseImageService baseImageService;
+    private final BuildExecutor buildExecutor;
+    private final CodeTypeService codeTypeService;
+    private final BuildRecordRepository buildRecordRepository;
 
     private final ConcurrentMap<String, Status> functionStatuses = new ConcurrentHashMap<>();
-    private final Map<String, Integer> functionHashes = new HashMap<>();
-
-    @Value("${docker.build.retries:10}")
-    private int retries;
-    @Value("${docker.build.backoff:50}")
-    private int delay;
+    private final Map<String, Integer> functionHashes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> requestedInputs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Mono<InspectImageResponse>> imageBuilds = new ConcurrentHashMap<>();
 
     public enum Status {IN_PROGRESS, SUCCESS, FAILURE}
 
-    public DockerBuildService(ReactiveDockerClient reactiveDockerClient, DockerfileService dockerfileService) {
+    public DockerBuildService(ReactiveDockerClient reactiveDockerClient, DockerfileService dockerfileService, DockerHostService dockerHostService, WarmPoolService warmPoolService, BaseImageService baseImageService, BuildExecutor buildExecutor, CodeTypeService codeTypeService, BuildRecordRepository buildRecordRepository) {
         this.reactiveDockerClient = reactiveDockerClient;
         this.dockerfileService = dockerfileService;
+        this.dockerHostService = dockerHostService;
+        this.warmPoolService = warmPoolService;
+        this.baseImageService = baseImageService;
+        this.buildExecutor = buildExecutor;
+        this.codeTypeService = codeTypeService;
+        this.buildRecordRepository = buildRecordRepository;
     }
 
     public Status getStatus(String functionName) {
-        return functionStatuses.get(functionName);
+        var statuses = dockerHostService.getHosts().stream()
+                .map(host -> functionStatuses.get(getKey(host, functionName)))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        return Stream.of(Status.IN_PROGRESS, Status.FAILURE, Status.SUCCESS).filter(statuses::contains).findFirst().orElse(null);
     }
 
-    public Mono<Void> build(CodeFunction codeFunction, boolean force) {
-        var functionName = codeFunction.getName();
-        if (!force && getStatus(functionName) == Status.SUCCESS && functionHashes.get(functionName) == getHash(codeFunction))
+    public Mono<Void> build(CodeFunction codeFunction, boolean force, BuildPriority priority) {
+        return Flux.fromIterable(dockerHostService.getHosts())
+                .flatMap(host -> build(host, codeFunction, force, priority))
+                .then();
+    }
+
+    public Mono<Void> build(DockerHost host, CodeFunction codeFunction, boolean force, BuildPriority priority) {
+        var key = getKey(host, codeFunction.getName());
+        if (!force && functionStatuses.get(key) == Status.SUCCESS && Objects.equals(functionHashes.get(key), getHash(codeFunction)))
             return Mono.empty();
-        return build(codeFunction, functionName).retryWhen(Retry.backoff(retries, Duration.ofMillis(delay))
-                .filter(t -> t instanceof DockerBuildAlreadyInProgressException));
+        return Mono.fromCallable(() -> dockerfileService.getBuildContext(codeFunction).getInputsHash())
+                .doOnNext(inputsHash -> requestedInputs.put(key, inputsHash))
+                .flatMap(inputsHash -> buildExecutor.submit(EXECUTOR_KEY.formatted(key, inputsHash), priority, force, forced -> build(host, codeFunction, key, forced)));
+    }
+
+    public Mono<Void> refresh(DockerHost host, CodeFunction codeFunction) {
+        functionHashes.remove(getKey(host, codeFunction.getName()));
+        return build(host, codeFunction, false, BuildPriority.BACKGROUND);
+    }
+
+    public Mono<Void> delete(String functionName) {
+        dockerHostService.getHosts().stream().map(host -> getKey(host, functionName)).forEach(key -> {
+            functionStatuses.remove(key);
+            functionHashes.remove(key);
+            requestedInputs.remove(key);
+        });
+        dockerHostService.removeImages(functionName);
+        dockerfileService.evict(functionName);
+        return buildRecordRepository.findAllByFunctionName(functionName)
+                .flatMap(record -> buildRecordRepository.delete(record)
+                        .then(Mono.justOrEmpty(dockerHostService.getHost(record.getHostId())))
+                        .flatMap(host -> releaseImage(host, record.getImageTag())))
+                .then();
+    }
+
+    private Mono<Void> build(DockerHost host, CodeFunction codeFunction, String key, boolean force) {
+        var functionName = codeFunction.getName();
+        return Mono.fromRunnable(() -> functionStatuses.put(key, Status.IN_PROGRESS))
+                .doOnSuccess(x -> functionHashes.remove(key))
+                .then(Mono.defer(() -> build(host, codeFunction, key, force, dockerfileService.getBuildContext(codeFunction)))
+                        .doOnError(e -> functionStatuses.put(key, Status.FAILURE))
+                        .doOnNext(x -> functionHashes.put(key, getHash(codeFunction)))
+                        .doOnNext(record -> dockerHostService.setImage(host, functionName, record.getImageTag()))
+                        .doOnNext(x -> functionStatuses.put(key, Status.SUCCESS)))
+                .then();
+    }
+
+    private Mono<BuildRecord> build(DockerHost host, CodeFunction codeFunction, String key, boolean force, BuildContext context) {
+        var codeType = codeTypeService.getCodeType(codeFunction.getCodeTypeName());
+        var inputsHash = context.getInputsHash();
+        return baseImageService.build(host, codeType)
+                .map(InspectImageResponse::getId)
+                .flatMap(baseImageId -> getImage(host, context, IMAGE_TAG.formatted(inputsHash), baseImageId, force)
+                        .filter(image -> isRequested(key, inputsHash))
+                        .flatMap(image -> saveRecord(host, codeFunction, key, inputsHash, baseImageId, image)));
+    }
+
+    private Mono<InspectImageResponse> getImage(DockerHost host, BuildContext context, String image, String baseImageId, boolean force) {
+        var key = getKey(host, image);
+        return Mono.defer(() -> imageBuilds.computeIfAbsent(key, k -> (force ? Mono.<InspectImageResponse>empty() : getUpToDateImage(host, image, baseImageId))
+                .switchIfEmpty(Mono.defer(() -> reactiveDockerClient.build(host, context, image, image, Map.of(BASE_IMAGE_LABEL, baseImageId))))
+                .doFinally(x -> imageBuilds.remove(k))
+                .cache()));
+    }
+
+    private Mono<InspectImageResponse> getUpToDateImage(DockerHost host, String image, String baseImageId) {
+        return reactiveDockerClient.getImage(host, image)
+                .filter(response -> baseImageId.equals(BaseImageService.getLabel(response, BASE_IMAGE_LABEL)))
+                .doOnNext(response -> log.info("Reusing image: {} on host: {}", image, host))
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    private Mono<BuildRecord> saveRecord(DockerHost host, CodeFunction codeFunction, String key, String inputsHash, String baseImageId, InspectImageResponse image) {
+        var record = new BuildRecord();
+        record.setId(key);
+        record.setHostId(host.getId());
+        record.setFunctionName(codeFunction.getName());
+        record.setInputsHash(inputsHash);
+        record.setImageTag(IMAGE_TAG.formatted(inputsHash));
+        record.setImageId(image.getId());
+        record.setBaseImageDigest(baseImageId);
+        record.setBuildTime(LocalDateTime.now());
+        return buildRecordRepository.findById(key)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(previous -> buildRecordRepository.save(record)
+                        .doOnSuccess(x -> resetPoolIfChanged(codeFunction, previous, record))
+                        .then(previous.map(BuildRecord::getImageTag)
+                                .filter(Predicate.not(record.getImageTag()::equals))
+                                .map(previousImage -> releaseImage(host, previousImage))
+                                .orElse(Mono.empty())))
+                .doOnError(e -> log.error("Failed to save build record of code function: {}", codeFunction.getName(), e))
+                .onErrorResume(e -> Mono.empty())
+                .thenReturn(record);
+    }
+
+    private void resetPoolIfChanged(CodeFunction codeFunction, Optional<BuildRecord> previous, BuildRecord record) {
+        if (previous.map(BuildRecord::getImageId).filter(record.getImageId()::equals).isEmpty())
+            warmPoolService.reset(codeFunction);
     }
 
-    private Mono<Void> build(CodeFunction codeFunction, String functionName) {
-        return Mono.fromRunnable(() -> validateNotInProgress(functionName))
-                .doOnSuccess(x -> functionHashes.remove(functionName))
-                .then(Mono.just(dockerfileService.getDockerfile(codeFunction)))
-                .flatMap(dockerfile -> reactiveDockerClient.build(dockerfile, functionName)
-                        .doOnError(e -> saveStatus(functionName, Status.IN_PROGRESS, Status.FAILURE))
-                        .doOnSuccess(x -> functionHashes.put(functionName, getHash(codeFunction)))
-                        .doOnSuccess(x -> saveStatus(functionName, Status.IN_PROGRESS, Status.SUCCESS)));
+    private Mono<Void> releaseImage(DockerHost host, String image) {
+        return buildRecordRepository.countByHostIdAndImageTag(host.getId(), image)
+                .filter(references -> references == 0)
+                .flatMap(x -> reactiveDockerClient.removeImage(host, image)
+                        .doOnSuccess(y -> log.info("Removed unreferenced image: {} on host: {}", image, host)))
+                .onErrorResume(e -> Mono.empty());
     }
 
-    private void validateNotInProgress(String functionName) {
-        var previousStatus = functionStatuses.get(functionName);
-        if (previousStatus == Status.IN_PROGRESS)
-            throw new DockerBuildAlreadyInProgressException(functionName);
-        if (previousStatus != null && !saveStatus(functionName, previousStatus, Status.IN_PROGRESS))
-            throw new DockerBuildAlreadyInProgressException(functionName);
-        if (previousStatus == null && functionStatuses.putIfAbsent(functionName, Status.IN_PROGRESS) != null)
-            throw new DockerBuildAlreadyInProgressException(functionName);
+    private boolean isRequested(String key, String inputsHash) {
+        var requested = requestedInputs.get(key);
+        if (requested == null || requested.equals(inputsHash))
+            return true;
+        log.info("Discarding superseded build: {} of: {}", inputsHash, key);
+        return false;
     }
 
-    private boolean saveStatus(String functionName, Status expectedValue, Status newValue) {
-        return functionStatuses.replace(functionName, expectedValue, newValue);
+    private static String getKey(DockerHost host, String functionName) {
+        return "%s/%s".formatted(host.getId(), functionName);
     }
 
     private static int getHash(CodeFunction codeFunction) {
@@ -0,0 +1,81 @@
+package org.yschwartz.sdp.docker.service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.docker.exception.ContainerNotFoundException;
+import org.yschwartz.sdp.docker.model.DockerHost;
+
+import lombok.extern.log4j.Log4j2;
+
+@Service
+@Log4j2
+public class DockerHostService {
+    private final List<DockerHost> hosts;
+
+    private final ConcurrentMap<String, DockerHost> containerOwners = new ConcurrentHashMap<>();
+
+    @Value("${docker.placement.build-penalty:5}")
+    private int buildPenalty;
+
+    public DockerHostService(List<DockerHost> dockerHosts) {
+        this.hosts = List.copyOf(dockerHosts);
+        log.info("Using docker hosts: {}", hosts);
+    }
+
+    public List<DockerHost> getHosts() {
+        return hosts;
+    }
+
+    public Optional<DockerHost> getHost(String id) {
+        return hosts.stream().filter(host -> host.getId().equals(id)).findFirst();
+    }
+
+    public DockerHost place(String functionName) {
+        return hosts.stream()
+                .min(Comparator.comparingInt(host -> getScore(host, functionName)))
+                .orElseThrow();
+    }
+
+    public DockerHost getOwner(String containerName) {
+        return findOwner(containerName).orElseThrow(() -> new ContainerNotFoundException(containerName));
+    }
+
+    public Optional<DockerHost> findOwner(String containerName) {
+        return Optional.ofNullable(containerOwners.get(containerName));
+    }
+
+    public void setOwner(String containerName, DockerHost host) {
+        containerOwners.put(containerName, host);
+    }
+
+    public void moveOwner(String containerName, String newName) {
+        Optional.ofNullable(containerOwners.remove(containerName)).ifPresent(host -> containerOwners.put(newName, host));
+    }
+
+    public void removeOwner(String containerName) {
+        containerOwners.remove(containerName);
+    }
+
+    public Optional<String> getImage(DockerHost host, String functionName) {
+        return Optional.ofNullable(host.getFunctionImages().get(functionName));
+    }
+
+    public void setImage(DockerHost host, String functionName, String image) {
+        host.getFunctionImages().put(functionName, image);
+    }
+
+    public void removeImages(String functionName) {
+        hosts.forEach(host -> host.getFunctionImages().remove(functionName));
+    }
+
+    private int getScore(DockerHost host, String functionName) {
+        var running = host.getRunning().get();
+        return host.getFunctionImages().containsKey(functionName) ? running : running + buildPenalty;
+    }
+}
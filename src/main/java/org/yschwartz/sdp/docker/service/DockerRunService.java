@@ -1,122 +1,145 @@
 package org.yschwartz.sdp.docker.service;
 
-import static org.yschwartz.sdp.common.config.Constants.NEW_LINE;
-import static org.yschwartz.sdp.common.service.FileService.FileType.LOGS;
-import static org.yschwartz.sdp.common.util.StringUtils.getLogFileName;
 import static org.yschwartz.sdp.common.util.StringUtils.getSeparator;
 
-import java.io.File;
-import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.yschwartz.sdp.codefunction.model.CodeFunction;
-import org.yschwartz.sdp.common.service.FileService;
 import org.yschwartz.sdp.docker.client.ReactiveDockerClient;
 import org.yschwartz.sdp.docker.exception.DockerRunException;
 import org.yschwartz.sdp.docker.mapper.DockerInputMapper;
+import org.yschwartz.sdp.docker.model.BuildPriority;
+import org.yschwartz.sdp.docker.model.DockerHost;
+import org.yschwartz.sdp.runlogs.service.LogSink;
+import org.yschwartz.sdp.runlogs.service.LogWriterService;
 import org.yschwartz.try_utils.model.Try;
 
 import com.github.dockerjava.api.exception.NotFoundException;
-import com.github.dockerjava.api.model.Container;
 
 import lombok.extern.log4j.Log4j2;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
 
 @Service
 @Log4j2
 public class DockerRunService {
-    private static final String EXITED_STATE = "exited";
-    private static final String RUNNING_STATE = "running";
-    private static final String STILL_RUNNING_MESSAGE = "still_running";
+    private static final String ROOT_PATH = "/";
 
     private final ReactiveDockerClient reactiveDockerClient;
     private final DockerBuildService dockerBuildService;
+    private final DockerHostService dockerHostService;
+    private final WarmPoolService warmPoolService;
     private final DockerInputMapper mapper;
-    private final FileService fileService;
+    private final LogWriterService logWriterService;
 
-    @Value("${docker.run.backoff:50}")
-    private int minBackoff;
     @Value("${logs.separator.char:-}")
     private char separatorChar;
     @Value("${logs.separator.length:50}")
     private int separatorLength;
     @Value("${docker.run.remove:true}")
     private boolean remove;
+    @Value("${docker.logs.timeout:5000}")
+    private long logsTimeout;
 
-    public DockerRunService(ReactiveDockerClient reactiveDockerClient, DockerBuildService dockerBuildService, DockerInputMapper mapper, FileService fileService) {
+    public DockerRunService(ReactiveDockerClient reactiveDockerClient, DockerBuildService dockerBuildService, DockerHostService dockerHostService, WarmPoolService warmPoolService, DockerInputMapper mapper, LogWriterService logWriterService) {
         this.reactiveDockerClient = reactiveDockerClient;
         this.dockerBuildService = dockerBuildService;
+        this.dockerHostService = dockerHostService;
+        this.warmPoolService = warmPoolService;
         this.mapper = mapper;
-        this.fileService = fileService;
+        this.logWriterService = logWriterService;
     }
 
-    public Mono<Integer> run(CodeFunction codeFunction, String containerName) {
-        var logFile = fileService.getFile(LOGS, codeFunction.getName(), getLogFileName(containerName));
-        var createCommand = mapper.mapCodeFunctionToCreateCommandInput(codeFunction, containerName);
+    public Mono<Integer> run(CodeFunction codeFunction, String containerName, Consumer<DockerHost> onStarted) {
+        return Mono.usingWhen(Mono.fromCallable(() -> logWriterService.open(codeFunction.getName(), containerName)),
+                logSink -> run(codeFunction, containerName, logSink, onStarted),
+                logWriterService::close);
+    }
+
+    private Mono<Integer> run(CodeFunction codeFunction, String containerName, LogSink logSink, Consumer<DockerHost> onStarted) {
         var start = new AtomicReference<Instant>();
+        var host = new AtomicReference<DockerHost>();
+        var logs = reactiveDockerClient.logs(containerName, logSink::write).onErrorResume(e -> Mono.empty()).cache();
         return Mono.fromRunnable(() -> start.set(Instant.now()))
-                .then(dockerBuildService.build(codeFunction, false))
-                .then(reactiveDockerClient.create(createCommand, containerName))
-                .onErrorResume(e -> e.getCause() instanceof NotFoundException,
-                        e -> dockerBuildService.build(codeFunction, true).then(reactiveDockerClient.create(createCommand, containerName)))
+                .then(Mono.defer(() -> warmPoolService.acquire(codeFunction, containerName)))
+                .filter(acquired -> !acquired)
+                .flatMap(x -> create(codeFunction, containerName))
+                .then(Mono.defer(() -> copyVolume(codeFunction, containerName)))
                 .then(reactiveDockerClient.start(containerName))
-                .doOnSuccess(x -> logStarted(logFile, start.get()))
-                .doOnSuccess(x -> reactiveDockerClient.logs(containerName, frame -> logToFile(logFile, frame.toString())).subscribe())
-                .then(waitForComplete(containerName, codeFunction.getRunTimeout(), start))
+                .doOnSuccess(x -> warmPoolService.refill(codeFunction))
+                .doOnSuccess(x -> setStarted(containerName, host, onStarted))
+                .doOnSuccess(x -> logStarted(logSink, start.get()))
+                .doOnSuccess(x -> logs.subscribe())
+                .then(Mono.defer(() -> waitForComplete(containerName, codeFunction.getRunTimeout(), start.get())))
+                .flatMap(code -> logs.timeout(Duration.ofMillis(logsTimeout), Mono.empty()).then(Mono.just(code)))
                 .doOnSuccess(x -> Optional.of(remove).filter(y -> y).ifPresent(y -> reactiveDockerClient.remove(containerName).subscribe()))
-                .doOnSuccess(code -> logCompleted(logFile, start.get(), code))
-                .onErrorMap(e -> new DockerRunException(codeFunction.getName(), e));
+                .doOnSuccess(code -> logCompleted(logSink, start.get(), code))
+                .onErrorMap(e -> new DockerRunException(codeFunction.getName(), e))
+                .doOnCancel(() -> Optional.ofNullable(host.get()).ifPresent(x -> stop(containerName)))
+                .doFinally(x -> setCompleted(containerName, host));
+    }
+
+    private Mono<Void> create(CodeFunction codeFunction, String containerName) {
+        var host = dockerHostService.place(codeFunction.getName());
+        return dockerBuildService.build(host, codeFunction, false, BuildPriority.FOREGROUND)
+                .then(create(host, codeFunction, containerName))
+                .onErrorResume(e -> e.getCause() instanceof NotFoundException,
+                        e -> dockerBuildService.build(host, codeFunction, true, BuildPriority.FOREGROUND).then(create(host, codeFunction, containerName)));
+    }
+
+    private Mono<Void> create(DockerHost host, CodeFunction codeFunction, String containerName) {
+        return Mono.fromCallable(() -> mapper.mapCodeFunctionToCreateCommandInput(host, codeFunction, containerName))
+                .flatMap(command -> reactiveDockerClient.create(host, command, containerName));
+    }
+
+    private Mono<Void> copyVolume(CodeFunction codeFunction, String containerName) {
+        if (dockerHostService.getOwner(containerName).isSharedFilesystem())
+            return Mono.empty();
+        return Mono.using(() -> mapper.mapVolumeToArchive(codeFunction.getName()),
+                archive -> reactiveDockerClient.copy(containerName, archive, ROOT_PATH),
+                archive -> Try.of(() -> Files.deleteIfExists(archive)).execute());
     }
 
-    private Mono<Integer> waitForComplete(String containerName, long timeout, AtomicReference<Instant> start) {
-        return reactiveDockerClient.get(containerName)
-                .map(container -> waitForComplete(container, containerName, timeout, start))
-                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(minBackoff)).filter(e -> STILL_RUNNING_MESSAGE.equals(e.getMessage())));
+    private void stop(String containerName) {
+        reactiveDockerClient.stop(containerName)
+                .then(Mono.defer(() -> remove ? reactiveDockerClient.remove(containerName) : Mono.empty()))
+                .onErrorResume(e -> Mono.empty())
+                .subscribe();
     }
 
-    private Integer waitForComplete(Container container, String containerName, long timeout, AtomicReference<Instant> start) {
-        var state = container.getState();
-        if (EXITED_STATE.equals(state))
-            return getExitCode(container);
-        if (!RUNNING_STATE.equals(state))
-            throw new RuntimeException("Unexpected container state %s for container: %s" .formatted(state, containerName));
-        if (getDuration(start.get()).toMinutes() > timeout)
-            reactiveDockerClient.stop(containerName).subscribe();
-        throw new RuntimeException(STILL_RUNNING_MESSAGE);
+    private void setStarted(String containerName, AtomicReference<DockerHost> hostRef, Consumer<DockerHost> onStarted) {
+        var host = dockerHostService.getOwner(containerName);
+        host.getRunning().incrementAndGet();
+        hostRef.set(host);
+        onStarted.accept(host);
     }
 
-    private Integer getExitCode(Container container) {
-        return Optional.of(container)
-                .map(Container::getStatus)
-                .map(s -> StringUtils.substringBetween(s, "(", ")"))
-                .filter(StringUtils::isNumeric)
-                .map(Integer::valueOf)
-                .orElse(-1);
+    private void setCompleted(String containerName, AtomicReference<DockerHost> hostRef) {
+        Optional.ofNullable(hostRef.get()).ifPresent(host -> host.getRunning().decrementAndGet());
+        dockerHostService.removeOwner(containerName);
     }
 
-    private void logStarted(File logFile, Instant start) {
-        logToFile(logFile, "Started function in %sms" .formatted(getDuration(start).toMillis()));
-        logToFile(logFile, getSeparator(separatorLength, separatorChar));
+    private Mono<Integer> waitForComplete(String containerName, long timeout, Instant start) {
+        var remaining = Duration.ofMinutes(timeout).minus(getDuration(start));
+        return reactiveDockerClient.waitForExit(containerName)
+                .timeout(remaining.isNegative() ? Duration.ZERO : remaining, Mono.defer(() -> reactiveDockerClient.stop(containerName)
+                        .then(reactiveDockerClient.waitForExit(containerName))));
     }
 
-    private void logCompleted(File logFile, Instant start, Integer code) {
-        logToFile(logFile, getSeparator(separatorLength, separatorChar));
-        logToFile(logFile, "Function completed after %sms with exit code: %s" .formatted(getDuration(start).toMillis(), code));
+    private void logStarted(LogSink logSink, Instant start) {
+        logSink.write("Started function in %sms" .formatted(getDuration(start).toMillis()));
+        logSink.write(getSeparator(separatorLength, separatorChar));
     }
 
-    private void logToFile(File logFile, String data) {
-        Try.of(() -> FileUtils.writeStringToFile(logFile, data + NEW_LINE, Charset.defaultCharset(), true))
-                .catchAny()
-                .thenDo(e -> log.error("Failed to write to log file: {}. Data: {}", logFile, data, e))
-                .execute();
+    private void logCompleted(LogSink logSink, Instant start, Integer code) {
+        logSink.write(getSeparator(separatorLength, separatorChar));
+        logSink.write("Function completed after %sms with exit code: %s" .formatted(getDuration(start).toMillis(), code));
     }
 
     private static Duration getDuration(Instant before) {
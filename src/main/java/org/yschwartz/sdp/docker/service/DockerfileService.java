@@ -1,24 +1,35 @@
 package org.yschwartz.sdp.docker.service;
 
+import static org.yschwartz.sdp.common.config.Constants.BASE_DOCKERFILE_PREFIX;
+import static org.yschwartz.sdp.common.config.Constants.BASE_IMAGE_TAG;
 import static org.yschwartz.sdp.common.config.Constants.CONTAINER_ROOT;
+import static org.yschwartz.sdp.common.config.Constants.DOCKERFILE_NAME;
 import static org.yschwartz.sdp.common.config.Constants.NEW_LINE;
 import static org.yschwartz.sdp.common.service.FileService.FileType.DOCKERFILE;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.time.LocalDateTime;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.springframework.stereotype.Service;
 import org.yschwartz.sdp.codefunction.model.CodeFunction;
 import org.yschwartz.sdp.codetype.model.CodeType;
 import org.yschwartz.sdp.codetype.service.CodeTypeService;
 import org.yschwartz.sdp.common.service.FileService;
 import org.yschwartz.sdp.docker.exception.DockerfileCreationException;
-import org.yschwartz.try_utils.functional.ThrowingConsumer;
-import org.yschwartz.try_utils.model.Try;
+import org.yschwartz.sdp.docker.model.BuildContext;
 
 import lombok.extern.log4j.Log4j2;
 
@@ -29,66 +40,114 @@ public class DockerfileService {
     private final CodeTypeService codeTypeService;
     private final FileService fileService;
 
+    private final ConcurrentMap<String, BuildContext> buildContexts = new ConcurrentHashMap<>();
+
     public DockerfileService(CodeTypeService codeTypeService, FileService fileService) {
         this.codeTypeService = codeTypeService;
         this.fileService = fileService;
     }
 
-    public File getDockerfile(CodeFunction codeFunction) {
+    @PostConstruct
+    public void deleteDockerfileDirectories() {
+        var root = fileService.getRootDirectory(DOCKERFILE);
+        fileService.list(root).forEach(directory -> fileService.deleteDirFiles(DOCKERFILE, directory.getName(), true));
+        if (root.delete())
+            log.info("Deleted unused dockerfile directory: {}", root);
+    }
+
+    public BuildContext getBuildContext(CodeFunction codeFunction) {
         var codeType = codeTypeService.getCodeType(codeFunction.getCodeTypeName());
         int hash = Objects.hash(codeFunction.getDependencies(), codeFunction.getAdditionalCommands(), codeType);
-        for (File file : fileService.listFiles(DOCKERFILE, codeFunction.getName())) {
-            if (file.getName().startsWith(String.valueOf(hash)))
-                return file;
-            if (file.delete() && log.isDebugEnabled())
-                log.debug("Deleted old dockerfile: {} for code function: {}", file.getName(), codeFunction.getName());
+        return getBuildContext(codeFunction.getName(), hash, dockerfile -> writeDockerfile(codeFunction, codeType, dockerfile));
+    }
+
+    public BuildContext getBaseBuildContext(CodeType codeType) {
+        return getBuildContext(BASE_DOCKERFILE_PREFIX + codeType.getName(), getBaseHash(codeType), dockerfile -> writeBaseDockerfile(codeType, dockerfile));
+    }
+
+    public String getBaseImage(CodeType codeType) {
+        return BASE_IMAGE_TAG.formatted(codeType.getName().toLowerCase(), Integer.toHexString(getBaseHash(codeType)));
+    }
+
+    public void evict(String functionName) {
+        buildContexts.remove(functionName);
+    }
+
+    private BuildContext getBuildContext(String name, int hash, Consumer<StringBuilder> writer) {
+        return buildContexts.compute(name, (key, current) -> Optional.ofNullable(current)
+                .filter(context -> context.getHash() == hash)
+                .orElseGet(() -> createBuildContext(name, hash, writer)));
+    }
+
+    private BuildContext createBuildContext(String name, int hash, Consumer<StringBuilder> writer) {
+        var dockerfile = new StringBuilder();
+        writer.accept(dockerfile);
+        var content = dockerfile.toString().getBytes();
+        try {
+            var context = new BuildContext(hash, getInputsHash(content), toTar(content));
+            log.info("Created new dockerfile for: {}", name);
+            return context;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new DockerfileCreationException(name, e);
         }
-        return createDockerfile(codeFunction, codeType, hash);
     }
 
-    private File createDockerfile(CodeFunction codeFunction, CodeType codeType, int hash) {
-        var dockerfile = fileService.getFile(DOCKERFILE, codeFunction.getName(), "%s_%s".formatted(hash, LocalDateTime.now()));
-        Try.of(() -> new FileOutputStream(dockerfile))
-                .flatMap(fos -> Try.of(fos, (ThrowingConsumer<FileOutputStream>) f -> writeDockerfile(codeFunction, codeType, f)))
-                .catchAny()
-                .thenThrow(e -> new DockerfileCreationException(codeFunction.getName(), e))
-                .execute();
-        log.info("Saved new dockerfile for code function: {} at {}", codeFunction.getName(), dockerfile);
-        return dockerfile;
+    private void writeBaseDockerfile(CodeType codeType, StringBuilder dockerfile) {
+        appendFromLine(dockerfile, codeType.getFrom());
+        codeType.getPreInstallCommands().forEach(command -> appendRunLine(dockerfile, command));
     }
 
-    private void writeDockerfile(CodeFunction codeFunction, CodeType codeType, FileOutputStream outputStream) {
-        appendFromLine(outputStream, codeType.getFrom());
-        codeType.getPreInstallCommands().forEach(command -> appendRunLine(outputStream, command));
+    private void writeDockerfile(CodeFunction codeFunction, CodeType codeType, StringBuilder dockerfile) {
+        appendFromLine(dockerfile, getBaseImage(codeType));
         Optional.of(codeFunction.getDependencies())
                 .map(list -> String.join(" ", list))
                 .filter(Predicate.not(String::isBlank))
                 .map(s -> "%s %s".formatted(codeType.getInstallCommand(), s))
-                .ifPresent(s -> appendRunLine(outputStream, s));
-        codeType.getPostInstallCommands().forEach(command -> appendRunLine(outputStream, command));
-        codeFunction.getAdditionalCommands().forEach(command -> appendRunLine(outputStream, command));
-        appendEntrypointLine(outputStream, codeType.getEntrypoint());
-        appendCmdLine(outputStream, "%s/%s".formatted(CONTAINER_ROOT, codeType.getMainFileName()));
+                .ifPresent(s -> appendRunLine(dockerfile, s));
+        codeType.getPostInstallCommands().forEach(command -> appendRunLine(dockerfile, command));
+        codeFunction.getAdditionalCommands().forEach(command -> appendRunLine(dockerfile, command));
+        appendEntrypointLine(dockerfile, codeType.getEntrypoint());
+        appendCmdLine(dockerfile, "%s/%s".formatted(CONTAINER_ROOT, codeType.getMainFileName()));
+    }
+
+    private static String getInputsHash(byte[] dockerfile) throws NoSuchAlgorithmException {
+        var digest = MessageDigest.getInstance("SHA-256").digest(dockerfile);
+        return "%064x".formatted(new BigInteger(1, digest));
+    }
+
+    private static byte[] toTar(byte[] dockerfile) throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        try (var tar = new TarArchiveOutputStream(outputStream)) {
+            var entry = new TarArchiveEntry(DOCKERFILE_NAME);
+            entry.setSize(dockerfile.length);
+            tar.putArchiveEntry(entry);
+            tar.write(dockerfile);
+            tar.closeArchiveEntry();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static int getBaseHash(CodeType codeType) {
+        return Objects.hash(codeType.getFrom(), codeType.getPreInstallCommands());
     }
 
-    private static void appendFromLine(FileOutputStream outputStream, String from) {
-        appendLine(outputStream, "FROM ", from);
+    private static void appendFromLine(StringBuilder dockerfile, String from) {
+        appendLine(dockerfile, "FROM ", from);
     }
 
-    private static void appendRunLine(FileOutputStream outputStream, String run) {
-        appendLine(outputStream, "RUN ", run);
+    private static void appendRunLine(StringBuilder dockerfile, String run) {
+        appendLine(dockerfile, "RUN ", run);
     }
 
-    private static void appendEntrypointLine(FileOutputStream outputStream, String entrypoint) {
-        appendLine(outputStream, "ENTRYPOINT [\"", entrypoint, "\"]");
+    private static void appendEntrypointLine(StringBuilder dockerfile, String entrypoint) {
+        appendLine(dockerfile, "ENTRYPOINT [\"", entrypoint, "\"]");
     }
 
-    private static void appendCmdLine(FileOutputStream outputStream, String cmd) {
-        appendLine(outputStream, "CMD [\"", cmd, "\"]");
+    private static void appendCmdLine(StringBuilder dockerfile, String cmd) {
+        appendLine(dockerfile, "CMD [\"", cmd, "\"]");
     }
 
-    private static void appendLine(FileOutputStream outputStream, String... parts) {
-        var line = String.join("", parts) + NEW_LINE;
-        Try.of(() -> outputStream.write(line.getBytes())).execute();
+    private static void appendLine(StringBuilder dockerfile, String... parts) {
+        dockerfile.append(String.join("", parts)).append(NEW_LINE);
     }
 }
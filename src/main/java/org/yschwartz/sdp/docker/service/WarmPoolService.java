@@ -0,0 +1,178 @@
+package org.yschwartz.sdp.docker.service;
+
+import static org.yschwartz.sdp.common.config.Constants.CONTAINER_NAME_DELIMITER;
+import static org.yschwartz.sdp.common.config.Constants.POOL_CONTAINER_PREFIX;
+import static org.yschwartz.sdp.common.util.StringUtils.createPoolContainerName;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.codefunction.model.CodeFunction;
+import org.yschwartz.sdp.docker.client.ReactiveDockerClient;
+import org.yschwartz.sdp.docker.mapper.DockerInputMapper;
+import org.yschwartz.sdp.docker.model.BuildPriority;
+
+import com.github.dockerjava.api.model.Container;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@Log4j2
+public class WarmPoolService {
+    private static final String HITS_METRIC = "sdp.pool.hits";
+    private static final String MISSES_METRIC = "sdp.pool.misses";
+    private static final String FUNCTION_TAG = "function";
+
+    private final ReactiveDockerClient reactiveDockerClient;
+    private final DockerHostService dockerHostService;
+    private final ObjectProvider<DockerBuildService> dockerBuildService;
+    private final DockerInputMapper mapper;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<>();
+
+    public WarmPoolService(ReactiveDockerClient reactiveDockerClient, DockerHostService dockerHostService, ObjectProvider<DockerBuildService> dockerBuildService, DockerInputMapper mapper, MeterRegistry meterRegistry) {
+        this.reactiveDockerClient = reactiveDockerClient;
+        this.dockerHostService = dockerHostService;
+        this.dockerBuildService = dockerBuildService;
+        this.mapper = mapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Mono<Boolean> acquire(CodeFunction codeFunction, String containerName) {
+        if (getPoolSize(codeFunction) == 0)
+            return Mono.just(false);
+        var functionName = codeFunction.getName();
+        var pooledContainer = Optional.ofNullable(getPool(codeFunction).containers.poll());
+        if (pooledContainer.isEmpty()) {
+            countMiss(functionName);
+            return Mono.just(false);
+        }
+        return reactiveDockerClient.rename(pooledContainer.get(), containerName)
+                .then(Mono.just(true))
+                .doOnSuccess(x -> meterRegistry.counter(HITS_METRIC, FUNCTION_TAG, functionName).increment())
+                .onErrorResume(e -> {
+                    log.warn("Failed to use pooled container: {} of code function: {}", pooledContainer.get(), functionName, e);
+                    removeContainer(pooledContainer.get());
+                    countMiss(functionName);
+                    return Mono.just(false);
+                });
+    }
+
+    public void refill(CodeFunction codeFunction) {
+        var poolSize = getPoolSize(codeFunction);
+        if (poolSize == 0) {
+            drain(codeFunction.getName());
+            return;
+        }
+        var pool = getPool(codeFunction);
+        var missing = poolSize - pool.containers.size() - pool.pending.get();
+        for (int i = 0; i < missing; i++)
+            createContainer(codeFunction, pool);
+    }
+
+    public void reset(CodeFunction codeFunction) {
+        drain(codeFunction.getName());
+        refill(codeFunction);
+    }
+
+    public void drain(String functionName) {
+        Optional.ofNullable(pools.remove(functionName)).ifPresent(this::removeContainers);
+    }
+
+    public Mono<Void> removeStaleContainers() {
+        return Flux.fromIterable(dockerHostService.getHosts())
+                .flatMap(host -> reactiveDockerClient.list(host, CONTAINER_NAME_DELIMITER + POOL_CONTAINER_PREFIX)
+                        .flatMapIterable(list -> list)
+                        .map(WarmPoolService::getContainerName)
+                        .filter(name -> pools.values().stream().noneMatch(pool -> pool.containers.contains(name)))
+                        .doOnNext(name -> dockerHostService.setOwner(name, host))
+                        .flatMap(reactiveDockerClient::remove)
+                        .onErrorResume(e -> Mono.empty()))
+                .then();
+    }
+
+    private void createContainer(CodeFunction codeFunction, Pool pool) {
+        var containerName = createPoolContainerName(codeFunction.getName());
+        var host = dockerHostService.place(codeFunction.getName());
+        pool.pending.incrementAndGet();
+        dockerBuildService.getObject().build(host, codeFunction, false, BuildPriority.BACKGROUND)
+                .then(Mono.fromCallable(() -> mapper.mapCodeFunctionToCreateCommandInput(host, codeFunction, containerName)))
+                .flatMap(command -> reactiveDockerClient.create(host, command, containerName))
+                .doOnSuccess(x -> addContainer(codeFunction.getName(), pool, containerName))
+                .doOnError(e -> log.warn("Failed to create pooled container for code function: {}", codeFunction.getName(), e))
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(x -> pool.pending.decrementAndGet())
+                .subscribe();
+    }
+
+    private void addContainer(String functionName, Pool pool, String containerName) {
+        pool.containers.add(containerName);
+        if (pools.get(functionName) != pool && pool.containers.remove(containerName))
+            removeContainer(containerName);
+    }
+
+    private Pool getPool(CodeFunction codeFunction) {
+        var functionName = codeFunction.getName();
+        var fingerprint = getFingerprint(codeFunction);
+        var current = pools.get(functionName);
+        if (current != null && current.fingerprint == fingerprint)
+            return current;
+        var pool = new Pool(fingerprint);
+        if (current == null && pools.putIfAbsent(functionName, pool) == null)
+            return pool;
+        if (current != null && pools.replace(functionName, current, pool)) {
+            removeContainers(current);
+            return pool;
+        }
+        return getPool(codeFunction);
+    }
+
+    private void removeContainers(Pool pool) {
+        String containerName;
+        while ((containerName = pool.containers.poll()) != null)
+            removeContainer(containerName);
+    }
+
+    private void removeContainer(String containerName) {
+        reactiveDockerClient.remove(containerName).subscribe();
+    }
+
+    private void countMiss(String functionName) {
+        meterRegistry.counter(MISSES_METRIC, FUNCTION_TAG, functionName).increment();
+    }
+
+    private static int getPoolSize(CodeFunction codeFunction) {
+        return Optional.ofNullable(codeFunction.getWarmPoolSize()).orElse(0);
+    }
+
+    private static int getFingerprint(CodeFunction codeFunction) {
+        return Objects.hash(codeFunction.getCodeTypeName(), codeFunction.getDependencies(), codeFunction.getAdditionalCommands(),
+                codeFunction.getEnvironmentVariables(), codeFunction.getVolumes(), codeFunction.getNetworkMode(), codeFunction.getPrivileged());
+    }
+
+    private static String getContainerName(Container container) {
+        return Arrays.stream(container.getNames()).findFirst().map(name -> name.substring(1)).orElse(container.getId());
+    }
+
+    private static class Pool {
+        private final int fingerprint;
+        private final Queue<String> containers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Pool(int fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.util.List;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 import org.yschwartz.sdp.rundetails.model.RunDetails;
+import org.yschwartz.sdp.rundetails.model.RunDetailsPage;
 import org.yschwartz.sdp.rundetails.service.RunDetailsService;
 
 import reactor.core.publisher.Flux;
@@ -33,4 +34,16 @@ public class RunDetailsController {
                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
         return runDetailsService.getAllRunDetails(functionNames, statuses, exitCodes, from, to);
     }
+
+    @GetMapping("page")
+    public Mono<RunDetailsPage> getPage(@RequestParam(required = false) List<String> functionNames,
+                                        @RequestParam(required = false) List<RunDetails.Status> statuses,
+                                        @RequestParam(required = false) List<Integer> exitCodes,
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(required = false) Integer size,
+                                        @RequestParam(required = false) List<String> fields) {
+        return runDetailsService.getRunDetailsPage(functionNames, statuses, exitCodes, from, to, cursor, size, fields);
+    }
 }
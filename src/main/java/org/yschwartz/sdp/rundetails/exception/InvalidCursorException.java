@@ -0,0 +1,13 @@
+package org.yschwartz.sdp.rundetails.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidCursorException extends RuntimeException {
+    private static final String MESSAGE = "Invalid run details cursor: %s";
+
+    public InvalidCursorException(String cursor, Throwable e) {
+        super(MESSAGE.formatted(cursor), e);
+    }
+}
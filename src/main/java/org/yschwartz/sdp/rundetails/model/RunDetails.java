@@ -13,11 +13,16 @@ public class RunDetails {
     @Id
     private String id;
     private String functionName;
+    private String host;
     private Status status;
+    private LocalDateTime scheduledTime;
+    private LocalDateTime firedTime;
     private LocalDateTime startTime;
+    private LocalDateTime admittedTime;
     private LocalDateTime endTime;
     private Integer exitCode;
     private String errorMessage;
+    private LocalDateTime expireAt;
 
-    public enum Status {IN_PROGRESS, SUCCESS, FAILURE}
+    public enum Status {QUEUED, IN_PROGRESS, SUCCESS, FAILURE, SKIPPED}
 }
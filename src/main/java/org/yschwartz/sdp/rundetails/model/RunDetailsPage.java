@@ -0,0 +1,11 @@
+package org.yschwartz.sdp.rundetails.model;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class RunDetailsPage {
+    private final List<RunDetails> items;
+    private final String nextCursor;
+}
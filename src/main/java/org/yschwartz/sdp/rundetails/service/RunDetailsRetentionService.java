@@ -0,0 +1,104 @@
+package org.yschwartz.sdp.rundetails.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.rundetails.model.RunDetails;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.result.UpdateResult;
+
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@Log4j2
+public class RunDetailsRetentionService {
+    private static final String TTL_INDEX_NAME = "expireAt_ttl";
+    private static final String EXPIRE_AT_FIELD = "expireAt";
+    private static final String FUNCTION_NAME_FIELD = "functionName";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${details.cleanup.mode:TTL}")
+    private RetentionMode mode;
+    @Value("${details.cleanup.retention:30}")
+    private int retentionDays;
+    @Value("${details.cleanup.unfinished-grace:1}")
+    private int unfinishedGraceDays;
+    @Value("#{${details.cleanup.function-retention:{:}}}")
+    private Map<String, Integer> functionRetentionDays;
+
+    public RunDetailsRetentionService(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    public enum RetentionMode {SWEEP, TTL}
+
+    @PostConstruct
+    public void reconcile() {
+        var indexOperations = reactiveMongoTemplate.indexOps(RunDetails.class);
+        if (mode == RetentionMode.SWEEP) {
+            indexOperations.getIndexInfo()
+                    .filter(index -> TTL_INDEX_NAME.equals(index.getName()))
+                    .flatMap(index -> indexOperations.dropIndex(TTL_INDEX_NAME))
+                    .doOnComplete(() -> log.info("Using sweep retention for run details"))
+                    .doOnError(e -> log.error("Failed to drop run details TTL index", e))
+                    .subscribe();
+            return;
+        }
+        indexOperations.ensureIndex(new Index().on(EXPIRE_AT_FIELD, Sort.Direction.ASC).expire(Duration.ZERO).named(TTL_INDEX_NAME))
+                .thenMany(reconcileDocuments())
+                .doOnComplete(() -> log.info("Reconciled run details TTL retention: {} days, overrides: {}", retentionDays, functionRetentionDays))
+                .doOnError(e -> log.error("Failed to reconcile run details TTL retention", e))
+                .subscribe();
+    }
+
+    public boolean isSweep() {
+        return mode == RetentionMode.SWEEP;
+    }
+
+    public LocalDateTime getExpireAt(RunDetails runDetails) {
+        if (mode == RetentionMode.SWEEP)
+            return null;
+        var retention = Duration.ofDays(getRetentionDays(runDetails.getFunctionName()));
+        return Optional.ofNullable(runDetails.getEndTime())
+                .orElseGet(() -> runDetails.getStartTime().plusDays(unfinishedGraceDays))
+                .plus(retention);
+    }
+
+    private int getRetentionDays(String functionName) {
+        return functionRetentionDays.getOrDefault(functionName, retentionDays);
+    }
+
+    private Flux<Long> reconcileDocuments() {
+        var overrides = Flux.fromIterable(functionRetentionDays.entrySet())
+                .concatMap(entry -> reconcileDocuments(Filters.eq(FUNCTION_NAME_FIELD, entry.getKey()), entry.getValue()));
+        return reconcileDocuments(Filters.nin(FUNCTION_NAME_FIELD, functionRetentionDays.keySet()), retentionDays).concatWith(overrides);
+    }
+
+    private Mono<Long> reconcileDocuments(Bson functionFilter, int days) {
+        var expireAt = new Document("$add", List.of(
+                new Document("$ifNull", List.of("$endTime", new Document("$add", List.of("$startTime", Duration.ofDays(unfinishedGraceDays).toMillis())))),
+                Duration.ofDays(days).toMillis()));
+        var filter = Filters.and(functionFilter, Filters.expr(new Document("$ne", List.of("$" + EXPIRE_AT_FIELD, expireAt))));
+        var update = List.of(new Document("$set", new Document(EXPIRE_AT_FIELD, expireAt)));
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(RunDetails.class))
+                .flatMap(collection -> Mono.from(collection.updateMany(filter, update)))
+                .map(UpdateResult::getModifiedCount)
+                .doOnNext(count -> log.debug("Updated expiry of {} run details to {} days retention", count, days));
+    }
+}
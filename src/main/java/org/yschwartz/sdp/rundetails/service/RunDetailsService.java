@@ -1,68 +1,187 @@
 package org.yschwartz.sdp.rundetails.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
 
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.rundetails.exception.InvalidCursorException;
 import org.yschwartz.sdp.rundetails.model.RunDetails;
+import org.yschwartz.sdp.rundetails.model.RunDetailsPage;
 import org.yschwartz.sdp.rundetails.repository.RunDetailsRepository;
+import org.yschwartz.sdp.schedule.model.Firing;
 
+import lombok.extern.log4j.Log4j2;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
+@Log4j2
 public class RunDetailsService {
+    private static final String ID_FIELD = "_id";
+    private static final String FUNCTION_NAME_FIELD = "functionName";
+    private static final String STATUS_FIELD = "status";
+    private static final String START_TIME_FIELD = "startTime";
+    private static final String CURSOR_DELIMITER = "|";
+    private static final Sort SORT = Sort.by(Sort.Direction.DESC, START_TIME_FIELD, ID_FIELD);
+    private static final List<Index> INDEXES = List.of(
+            new Index().on(START_TIME_FIELD, Sort.Direction.DESC).on(ID_FIELD, Sort.Direction.DESC).named("startTime_id"),
+            new Index().on(FUNCTION_NAME_FIELD, Sort.Direction.ASC).on(START_TIME_FIELD, Sort.Direction.DESC).on(ID_FIELD, Sort.Direction.DESC).named("functionName_startTime_id"),
+            new Index().on(STATUS_FIELD, Sort.Direction.ASC).on(START_TIME_FIELD, Sort.Direction.DESC).on(ID_FIELD, Sort.Direction.DESC).named("status_startTime_id"));
+    private static final List<String> IN_PROGRESS_FIELDS = List.of("status", "admittedTime");
+    private static final List<String> COMPLETED_FIELDS = List.of("status", "host", "endTime", "exitCode", "errorMessage", "expireAt");
+
     private final RunDetailsRepository runDetailsRepository;
+    private final RunDetailsWriter runDetailsWriter;
+    private final RunDetailsRetentionService runDetailsRetentionService;
     private final ReactiveMongoTemplate reactiveMongoTemplate;
 
-    public RunDetailsService(RunDetailsRepository runDetailsRepository, ReactiveMongoTemplate reactiveMongoTemplate) {
+    @Value("${details.page.size:100}")
+    private int defaultPageSize;
+    @Value("${details.page.max-size:1000}")
+    private int maxPageSize;
+
+    public RunDetailsService(RunDetailsRepository runDetailsRepository, RunDetailsWriter runDetailsWriter, RunDetailsRetentionService runDetailsRetentionService, ReactiveMongoTemplate reactiveMongoTemplate) {
         this.runDetailsRepository = runDetailsRepository;
+        this.runDetailsWriter = runDetailsWriter;
+        this.runDetailsRetentionService = runDetailsRetentionService;
         this.reactiveMongoTemplate = reactiveMongoTemplate;
     }
 
-    public Mono<RunDetails> saveInProgressDetails(String id, String functionName) {
-        var runDetails = new RunDetails();
-        runDetails.setId(id);
-        runDetails.setFunctionName(functionName);
-        runDetails.setStartTime(LocalDateTime.now());
+    @PostConstruct
+    public void createIndexes() {
+        var indexOperations = reactiveMongoTemplate.indexOps(RunDetails.class);
+        Flux.fromIterable(INDEXES)
+                .concatMap(indexOperations::ensureIndex)
+                .doOnNext(index -> log.info("Ensured run details index: {}", index))
+                .doOnError(e -> log.error("Failed to create run details indexes", e))
+                .subscribe();
+    }
+
+    public Mono<RunDetails> saveTriggeredDetails(String id, String functionName, boolean queued, Firing firing) {
+        var runDetails = createRunDetails(id, functionName, firing);
+        if (queued) {
+            runDetails.setStatus(RunDetails.Status.QUEUED);
+        } else {
+            runDetails.setStatus(RunDetails.Status.IN_PROGRESS);
+            runDetails.setAdmittedTime(runDetails.getStartTime());
+        }
+        return runDetailsWriter.write(runDetails);
+    }
+
+    public Mono<RunDetails> saveSkippedDetails(String id, String functionName, Firing firing) {
+        var runDetails = createRunDetails(id, functionName, firing);
+        runDetails.setStatus(RunDetails.Status.SKIPPED);
+        runDetails.setEndTime(runDetails.getStartTime());
+        runDetails.setExpireAt(runDetailsRetentionService.getExpireAt(runDetails));
+        return runDetailsWriter.write(runDetails);
+    }
+
+    public Mono<RunDetails> saveInProgressDetails(RunDetails runDetails) {
         runDetails.setStatus(RunDetails.Status.IN_PROGRESS);
-        return runDetailsRepository.save(runDetails);
+        runDetails.setAdmittedTime(LocalDateTime.now());
+        return runDetailsWriter.write(runDetails, IN_PROGRESS_FIELDS);
     }
 
     public Mono<RunDetails> saveSuccessDetails(RunDetails runDetails, int exitCode) {
         runDetails.setExitCode(exitCode);
         runDetails.setStatus(RunDetails.Status.SUCCESS);
         runDetails.setEndTime(LocalDateTime.now());
-        return runDetailsRepository.save(runDetails);
+        runDetails.setExpireAt(runDetailsRetentionService.getExpireAt(runDetails));
+        return runDetailsWriter.write(runDetails, COMPLETED_FIELDS);
     }
 
     public Mono<RunDetails> saveFailureDetails(RunDetails runDetails, String errorMessage) {
         runDetails.setErrorMessage(errorMessage);
         runDetails.setStatus(RunDetails.Status.FAILURE);
         runDetails.setEndTime(LocalDateTime.now());
-        return runDetailsRepository.save(runDetails);
+        runDetails.setExpireAt(runDetailsRetentionService.getExpireAt(runDetails));
+        return runDetailsWriter.write(runDetails, COMPLETED_FIELDS);
     }
 
     public Mono<Void> deleteAllRunDetails(String functionName) {
-        return runDetailsRepository.deleteAllByFunctionName(functionName);
+        return runDetailsWriter.discard(functionName)
+                .then(runDetailsRepository.deleteAllByFunctionName(functionName));
     }
 
     public Mono<RunDetails> getRunDetails(String id) {
-        return runDetailsRepository.findById(id);
+        return Mono.justOrEmpty(runDetailsWriter.get(id))
+                .switchIfEmpty(Mono.defer(() -> runDetailsRepository.findById(id)));
     }
 
     public Flux<RunDetails> getAllRunDetails(List<String> functionNames, List<RunDetails.Status> statuses, List<Integer> exitCodes, LocalDateTime from, LocalDateTime to) {
+        var query = createQuery(functionNames, statuses, exitCodes, from, to);
+        return reactiveMongoTemplate.find(query.with(SORT), RunDetails.class);
+    }
+
+    public Mono<RunDetailsPage> getRunDetailsPage(List<String> functionNames, List<RunDetails.Status> statuses, List<Integer> exitCodes, LocalDateTime from, LocalDateTime to,
+                                                  String cursor, Integer size, List<String> fields) {
+        var pageSize = Math.min(Optional.ofNullable(size).filter(s -> s > 0).orElse(defaultPageSize), maxPageSize);
+        var query = createQuery(functionNames, statuses, exitCodes, from, to);
+        Optional.ofNullable(cursor).map(RunDetailsService::decodeCursor).ifPresent(query::addCriteria);
+        Optional.ofNullable(fields)
+                .filter(Predicate.not(List::isEmpty))
+                .ifPresent(list -> {
+                    list.forEach(query.fields()::include);
+                    query.fields().include(START_TIME_FIELD);
+                });
+        query.with(SORT).limit(pageSize + 1);
+        return reactiveMongoTemplate.find(query, RunDetails.class)
+                .collectList()
+                .map(list -> list.size() > pageSize
+                        ? new RunDetailsPage(list.subList(0, pageSize), encodeCursor(list.get(pageSize - 1)))
+                        : new RunDetailsPage(list, null));
+    }
+
+    private static Query createQuery(List<String> functionNames, List<RunDetails.Status> statuses, List<Integer> exitCodes, LocalDateTime from, LocalDateTime to) {
         var query = new Query();
-        addCriteria(query, "functionName", functionNames);
-        addCriteria(query, "status", statuses);
+        addCriteria(query, FUNCTION_NAME_FIELD, functionNames);
+        addCriteria(query, STATUS_FIELD, statuses);
         addCriteria(query, "exitCode", exitCodes);
         addCriteria(query, from, to);
-        return reactiveMongoTemplate.find(query, RunDetails.class);
+        return query;
+    }
+
+    private static String encodeCursor(RunDetails runDetails) {
+        var cursor = runDetails.getStartTime() + CURSOR_DELIMITER + runDetails.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Criteria decodeCursor(String cursor) {
+        try {
+            var decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var delimiter = decoded.indexOf(CURSOR_DELIMITER);
+            var startTime = LocalDateTime.parse(decoded.substring(0, delimiter));
+            var id = decoded.substring(delimiter + 1);
+            return new Criteria().orOperator(Criteria.where(START_TIME_FIELD).lt(startTime),
+                    Criteria.where(START_TIME_FIELD).is(startTime).and(ID_FIELD).lt(id));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException(cursor, e);
+        }
+    }
+
+    private RunDetails createRunDetails(String id, String functionName, Firing firing) {
+        var runDetails = new RunDetails();
+        runDetails.setId(id);
+        runDetails.setFunctionName(functionName);
+        runDetails.setStartTime(LocalDateTime.now());
+        Optional.ofNullable(firing).ifPresent(f -> {
+            runDetails.setScheduledTime(f.getScheduledTime());
+            runDetails.setFiredTime(f.getFiredTime());
+        });
+        runDetails.setExpireAt(runDetailsRetentionService.getExpireAt(runDetails));
+        return runDetails;
     }
 
     private static <T> void addCriteria(Query query, String field, List<T> in) {
@@ -72,7 +191,7 @@ public class RunDetailsService {
     }
 
     private static void addCriteria(Query query, LocalDateTime from, LocalDateTime to) {
-        var criteria = Criteria.where("startTime");
+        var criteria = Criteria.where(START_TIME_FIELD);
         var fromOpt = Optional.ofNullable(from);
         var toOpt = Optional.ofNullable(to);
         fromOpt.ifPresent(criteria::gte);
@@ -0,0 +1,205 @@
+package org.yschwartz.sdp.rundetails.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.rundetails.model.RunDetails;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+@Log4j2
+public class RunDetailsWriter {
+    private static final String PENDING_METRIC = "sdp.rundetails.pending";
+    private static final String BATCH_METRIC = "sdp.rundetails.batch.size";
+    private static final String ID_FIELD = "_id";
+    private static final String FUNCTION_NAME_FIELD = "functionName";
+    private static final String SET_OPERATOR = "$set";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final Scheduler scheduler = Schedulers.newSingle("run-details-writer");
+    private final ConcurrentMap<String, RunDetails> overlay = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final Map<String, LocalDateTime> discarded = new HashMap<>();
+    private Map<String, Document> pending = new LinkedHashMap<>();
+    private Sinks.Empty<Void> flushed = Sinks.empty();
+
+    @Value("${rundetails.writer.interval:100}")
+    private long flushInterval;
+    @Value("${rundetails.writer.capacity:10000}")
+    private int capacity;
+    @Value("${rundetails.writer.shutdown-timeout:10000}")
+    private long shutdownTimeout;
+    @Value("${rundetails.writer.discard-window:86400000}")
+    private long discardWindow;
+
+    public RunDetailsWriter(ReactiveMongoTemplate reactiveMongoTemplate, MeterRegistry meterRegistry) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void startFlushing() {
+        meterRegistry.gauge(PENDING_METRIC, this, RunDetailsWriter::getPending);
+        scheduler.schedulePeriodically(this::requestFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        scheduler.dispose();
+        Mono.defer(this::flush)
+                .repeatWhen(repeat -> repeat.delayElements(Duration.ofMillis(flushInterval)).takeWhile(x -> flushing.get() || getPending() > 0))
+                .then()
+                .timeout(Duration.ofMillis(shutdownTimeout))
+                .doOnError(e -> log.error("Failed to flush {} pending run details on shutdown", getPending(), e))
+                .onErrorResume(e -> Mono.empty())
+                .block();
+    }
+
+    public Mono<RunDetails> write(RunDetails runDetails) {
+        return write(runDetails, List.of());
+    }
+
+    public Mono<RunDetails> write(RunDetails runDetails, List<String> fields) {
+        return Mono.defer(() -> {
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(runDetails, document);
+            var update = fields.isEmpty() ? document : fields.stream()
+                    .collect(Document::new, (doc, field) -> doc.put(field, document.get(field)), Document::putAll);
+            update.remove(ID_FIELD);
+            Mono<Void> waitFor;
+            synchronized (this) {
+                if (isDiscarded(runDetails)) {
+                    log.debug("Ignoring run details of deleted function: {}", runDetails.getId());
+                    return Mono.just(runDetails);
+                }
+                if (pending.size() < capacity || pending.containsKey(runDetails.getId())) {
+                    pending.merge(runDetails.getId(), update, RunDetailsWriter::merge);
+                    overlay.put(runDetails.getId(), runDetails);
+                    return Mono.just(runDetails);
+                }
+                waitFor = flushed.asMono();
+            }
+            requestFlush();
+            return waitFor.then(write(runDetails, fields));
+        });
+    }
+
+    public Optional<RunDetails> get(String id) {
+        return Optional.ofNullable(overlay.get(id));
+    }
+
+    public Mono<Void> discard(String functionName) {
+        return Mono.defer(() -> {
+            Mono<Void> waitFor;
+            synchronized (this) {
+                var now = LocalDateTime.now();
+                discarded.values().removeIf(time -> time.isBefore(now.minus(discardWindow, ChronoUnit.MILLIS)));
+                discarded.put(functionName, now);
+                overlay.values().removeIf(runDetails -> functionName.equals(runDetails.getFunctionName()));
+                pending.keySet().removeIf(id -> !overlay.containsKey(id));
+                if (!flushing.get())
+                    return Mono.empty();
+                waitFor = flushed.asMono();
+            }
+            requestFlush();
+            return waitFor;
+        });
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    private boolean isDiscarded(RunDetails runDetails) {
+        return Optional.ofNullable(discarded.get(runDetails.getFunctionName()))
+                .filter(time -> runDetails.getStartTime() == null || runDetails.getStartTime().isBefore(time))
+                .isPresent();
+    }
+
+    private void requestFlush() {
+        flush().subscribe();
+    }
+
+    private Mono<Void> flush() {
+        if (!flushing.compareAndSet(false, true))
+            return Mono.empty();
+        Map<String, Document> batch;
+        Sinks.Empty<Void> batchFlushed;
+        synchronized (this) {
+            batch = pending;
+            batchFlushed = flushed;
+            pending = new LinkedHashMap<>();
+            flushed = Sinks.empty();
+        }
+        if (batch.isEmpty()) {
+            flushing.set(false);
+            batchFlushed.tryEmitEmpty();
+            return Mono.empty();
+        }
+        var requests = batch.entrySet().stream()
+                .map(entry -> new UpdateOneModel<Document>(Filters.eq(ID_FIELD, entry.getKey()), new Document(SET_OPERATOR, entry.getValue()), new UpdateOptions().upsert(entry.getValue().containsKey(FUNCTION_NAME_FIELD))))
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(RunDetails.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(requests, new BulkWriteOptions().ordered(false))))
+                .doOnSuccess(result -> meterRegistry.summary(BATCH_METRIC).record(batch.size()))
+                .doOnSuccess(result -> evict(batch.keySet()))
+                .doOnError(e -> log.error("Failed to write {} run details, retrying on next flush", batch.size(), e))
+                .doOnError(e -> restore(batch))
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(x -> {
+                    flushing.set(false);
+                    batchFlushed.tryEmitEmpty();
+                })
+                .then();
+    }
+
+    private synchronized void evict(Iterable<String> ids) {
+        ids.forEach(id -> {
+            if (!pending.containsKey(id))
+                overlay.remove(id);
+        });
+    }
+
+    private synchronized void restore(Map<String, Document> batch) {
+        batch.forEach((id, update) -> {
+            if (overlay.containsKey(id))
+                pending.merge(id, update, (newer, older) -> merge(older, newer));
+        });
+    }
+
+    private static Document merge(Document older, Document newer) {
+        older.putAll(newer);
+        return older;
+    }
+}
@@ -5,30 +5,43 @@ import java.util.List;
 
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.yschwartz.sdp.runlogs.model.LogQuery;
+import org.yschwartz.sdp.runlogs.service.LogDownloadService;
 import org.yschwartz.sdp.runlogs.service.RunLogsService;
 
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/logs")
 public class RunLogsController {
     private final RunLogsService runLogsService;
+    private final LogDownloadService logDownloadService;
 
-    public RunLogsController(RunLogsService runLogsService) {
+    public RunLogsController(RunLogsService runLogsService, LogDownloadService logDownloadService) {
         this.runLogsService = runLogsService;
+        this.logDownloadService = logDownloadService;
     }
 
     @GetMapping(value = "{id}/log.txt", produces = MediaType.TEXT_PLAIN_VALUE)
-    public Flux<String> get(@PathVariable String id) {
-        return runLogsService.getLogs(id);
+    public Flux<String> get(@PathVariable String id, LogQuery query) {
+        return runLogsService.getLogs(id, query);
+    }
+
+    @GetMapping("{id}/log")
+    public Mono<Void> download(@PathVariable String id, ServerHttpRequest request, ServerHttpResponse response) {
+        return logDownloadService.download(id, request, response);
     }
 
     @GetMapping(value = "{functionName}/logs.txt", produces = MediaType.TEXT_PLAIN_VALUE)
     public Flux<String> getAll(@PathVariable String functionName,
                                @RequestParam(required = false) List<String> containerNames,
                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
-                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
-        return runLogsService.getAllLogs(List.of(functionName), containerNames, from, to);
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                               LogQuery query) {
+        return runLogsService.getAllLogs(List.of(functionName), containerNames, from, to, query);
     }
 }
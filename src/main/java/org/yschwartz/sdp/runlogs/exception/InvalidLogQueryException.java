@@ -0,0 +1,13 @@
+package org.yschwartz.sdp.runlogs.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidLogQueryException extends RuntimeException {
+    private static final String MESSAGE = "Invalid log query: %s must not be negative, got %d";
+
+    public InvalidLogQueryException(String parameter, long value) {
+        super(MESSAGE.formatted(parameter, value));
+    }
+}
@@ -0,0 +1,9 @@
+package org.yschwartz.sdp.runlogs.exception;
+
+public class WriteLogsException extends RuntimeException {
+    private static final String MESSAGE = "Failed to write logs of container: %s";
+
+    public WriteLogsException(String containerName, Throwable e) {
+        super(MESSAGE.formatted(containerName), e);
+    }
+}
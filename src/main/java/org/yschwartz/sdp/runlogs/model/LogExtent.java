@@ -0,0 +1,20 @@
+package org.yschwartz.sdp.runlogs.model;
+
+import java.nio.file.Path;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class LogExtent {
+    private final String containerName;
+    private final long segmentId;
+    private final Path path;
+    private final long offset;
+    private final long length;
+    private final long rawLength;
+    private final int lines;
+    private final boolean compressed;
+    private final long timestamp;
+}
@@ -0,0 +1,23 @@
+package org.yschwartz.sdp.runlogs.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import lombok.Data;
+
+@Data
+public class LogQuery {
+    private Long tail;
+    private Long offset;
+    private Long limit;
+    private Unit unit;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime since;
+
+    public enum Unit {BYTES, LINES}
+
+    public boolean isSliced() {
+        return tail != null || offset != null || limit != null || since != null;
+    }
+}
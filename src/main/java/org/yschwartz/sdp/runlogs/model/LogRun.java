@@ -0,0 +1,13 @@
+package org.yschwartz.sdp.runlogs.model;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class LogRun {
+    private final List<LogExtent> extents;
+    private final byte[] pending;
+}
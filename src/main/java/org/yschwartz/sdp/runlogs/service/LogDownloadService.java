@@ -0,0 +1,241 @@
+package org.yschwartz.sdp.runlogs.service;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.yschwartz.sdp.common.util.StringUtils.getLogFileName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.runlogs.model.LogExtent;
+import org.yschwartz.sdp.runlogs.model.LogRun;
+import org.yschwartz.try_utils.model.Try;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+public class LogDownloadService {
+    private static final String GZIP = "gzip";
+    private static final String BYTES = "bytes";
+    private static final String CONTENT_RANGE = "bytes %d-%d/%d";
+    private static final String UNSATISFIED_RANGE = "bytes */%d";
+
+    private final RunLogsService runLogsService;
+    private final LogStore logStore;
+
+    @Value("${logs.download.buffer-size:65536}")
+    private int bufferSize;
+    @Value("${logs.download.gzip:false}")
+    private boolean gzipEnabled;
+
+    public LogDownloadService(RunLogsService runLogsService, LogStore logStore) {
+        this.runLogsService = runLogsService;
+        this.logStore = logStore;
+    }
+
+    public Mono<Void> download(String containerName, ServerHttpRequest request, ServerHttpResponse response) {
+        return Mono.fromCallable(() -> runLogsService.getRun(containerName))
+                .flatMap(run -> download(containerName, run, request, response));
+    }
+
+    private Mono<Void> download(String containerName, LogRun run, ServerHttpRequest request, ServerHttpResponse response) {
+        var headers = response.getHeaders();
+        var total = run.getExtents().stream().mapToLong(LogExtent::getRawLength).sum() + run.getPending().length;
+        headers.setContentType(MediaType.TEXT_PLAIN);
+        headers.setContentDisposition(ContentDisposition.attachment().filename(getLogFileName(containerName)).build());
+        headers.set(HttpHeaders.ACCEPT_RANGES, BYTES);
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        var ranges = getRanges(request);
+        if (ranges.size() == 1) {
+            var range = ranges.get(0);
+            if (total == 0 || !isSatisfiable(range, total)) {
+                response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                headers.set(HttpHeaders.CONTENT_RANGE, UNSATISFIED_RANGE.formatted(total));
+                return response.setComplete();
+            }
+            var start = range.getRangeStart(total);
+            var end = range.getRangeEnd(total);
+            response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+            headers.set(HttpHeaders.CONTENT_RANGE, CONTENT_RANGE.formatted(start, end, total));
+            return writeIdentity(run, start, end + 1, response);
+        }
+        if (gzipEnabled && acceptsGzip(request)) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+            return writeGzip(run, response);
+        }
+        return writeIdentity(run, 0, total, response);
+    }
+
+    private Mono<Void> writeIdentity(LogRun run, long start, long end, ServerHttpResponse response) {
+        response.getHeaders().setContentLength(end - start);
+        var regions = getRegions(run, start, end);
+        if (regions.size() == 1 && regions.get(0).extent != null && !regions.get(0).extent.isCompressed() && response instanceof ZeroCopyHttpOutputMessage) {
+            var region = regions.get(0);
+            return ((ZeroCopyHttpOutputMessage) response).writeWith(region.extent.getPath(), region.extent.getOffset() + region.from, region.to - region.from);
+        }
+        var factory = response.bufferFactory();
+        return response.writeWith(Flux.fromIterable(regions).concatMap(region -> read(region, factory)));
+    }
+
+    private Mono<Void> writeGzip(LogRun run, ServerHttpResponse response) {
+        var factory = response.bufferFactory();
+        var extents = run.getExtents();
+        if (run.getPending().length == 0 && extents.stream().allMatch(LogExtent::isCompressed)) {
+            response.getHeaders().setContentLength(extents.stream().mapToLong(LogExtent::getLength).sum());
+            return response.writeWith(Flux.fromIterable(extents).concatMap(extent -> read(extent.getPath(), extent.getOffset(), extent.getLength(), factory)));
+        }
+        var regions = getRegions(run, 0, Long.MAX_VALUE);
+        return response.writeWith(compress(Flux.fromIterable(regions).concatMap(region -> read(region, factory)), factory));
+    }
+
+    private Flux<DataBuffer> read(Region region, DataBufferFactory factory) {
+        var length = (int) (region.to - region.from);
+        if (region.extent == null)
+            return Flux.just(factory.wrap(ByteBuffer.wrap(region.data, (int) region.from, length)));
+        if (region.extent.isCompressed())
+            return Mono.fromCallable(() -> factory.wrap(ByteBuffer.wrap(logStore.read(region.extent), (int) region.from, length))).flux();
+        return read(region.extent.getPath(), region.extent.getOffset() + region.from, region.to - region.from, factory);
+    }
+
+    private Flux<DataBuffer> read(Path path, long position, long count, DataBufferFactory factory) {
+        var buffers = DataBufferUtils.readAsynchronousFileChannel(() -> AsynchronousFileChannel.open(path, READ), position, factory, bufferSize);
+        return DataBufferUtils.takeUntilByteCount(buffers, count);
+    }
+
+    private static Flux<DataBuffer> compress(Flux<DataBuffer> buffers, DataBufferFactory factory) {
+        return Flux.using(GzipBuffer::new,
+                gzip -> buffers.<DataBuffer>handle((buffer, sink) -> {
+                    try {
+                        gzip.write(buffer);
+                        if (gzip.hasOutput())
+                            sink.next(gzip.drain(factory));
+                    } catch (IOException e) {
+                        sink.error(e);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                }).concatWith(Mono.fromCallable(() -> gzip.finish(factory))),
+                gzip -> Try.of(gzip::close).execute());
+    }
+
+    private static List<Region> getRegions(LogRun run, long start, long end) {
+        var regions = new ArrayList<Region>();
+        var position = 0L;
+        for (var extent : run.getExtents()) {
+            var length = extent.getRawLength();
+            if (position + length > start && position < end)
+                addRegion(regions, new Region(extent, null, Math.max(start - position, 0), Math.min(end - position, length)));
+            position += length;
+        }
+        var pending = run.getPending();
+        if (position + pending.length > start && position < end)
+            regions.add(new Region(null, pending, Math.max(start - position, 0), Math.min(end - position, pending.length)));
+        return regions;
+    }
+
+    private static void addRegion(List<Region> regions, Region region) {
+        var last = regions.isEmpty() ? null : regions.get(regions.size() - 1);
+        if (last != null && isContiguous(last, region))
+            regions.set(regions.size() - 1, new Region(last.extent, null, last.from, last.to + region.to - region.from));
+        else
+            regions.add(region);
+    }
+
+    private static boolean isContiguous(Region first, Region second) {
+        return first.extent != null && second.extent != null
+                && !first.extent.isCompressed() && !second.extent.isCompressed()
+                && first.extent.getPath().equals(second.extent.getPath())
+                && first.extent.getOffset() + first.to == second.extent.getOffset() + second.from;
+    }
+
+    private static List<HttpRange> getRanges(ServerHttpRequest request) {
+        try {
+            return request.getHeaders().getRange();
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    private static boolean isSatisfiable(HttpRange range, long total) {
+        try {
+            return range.getRangeStart(total) <= range.getRangeEnd(total);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean acceptsGzip(ServerHttpRequest request) {
+        return request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING).stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .anyMatch(encoding -> encoding.startsWith(GZIP) && !encoding.replace(" ", "").endsWith("q=0"));
+    }
+
+    private static class Region {
+        private final LogExtent extent;
+        private final byte[] data;
+        private final long from;
+        private final long to;
+
+        private Region(LogExtent extent, byte[] data, long from, long to) {
+            this.extent = extent;
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static class GzipBuffer {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final GZIPOutputStream gzip;
+
+        private GzipBuffer() throws IOException {
+            this.gzip = new GZIPOutputStream(output);
+        }
+
+        private void write(DataBuffer buffer) throws IOException {
+            var bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            gzip.write(bytes);
+        }
+
+        private boolean hasOutput() {
+            return output.size() > 0;
+        }
+
+        private DataBuffer drain(DataBufferFactory factory) {
+            var buffer = factory.wrap(output.toByteArray());
+            output.reset();
+            return buffer;
+        }
+
+        private DataBuffer finish(DataBufferFactory factory) throws IOException {
+            gzip.finish();
+            return drain(factory);
+        }
+
+        private void close() throws IOException {
+            gzip.close();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.yschwartz.sdp.runlogs.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+class LogScanner {
+    static final int CHUNK_SIZE = 65536;
+    private static final DateTimeFormatter SECONDS_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    private LogScanner() {
+    }
+
+    interface LinePredicate {
+        boolean test(byte[] data, int from, int to);
+    }
+
+    static LinePredicate lineCount(long lines) {
+        var counter = new AtomicLong();
+        return (data, from, to) -> counter.getAndIncrement() == lines;
+    }
+
+    static LinePredicate since(Instant since) {
+        var seconds = SECONDS_FORMATTER.format(since).getBytes();
+        return (data, from, to) -> {
+            var start = indexOf(data, from, to, (byte) ' ') + 1;
+            if (start <= 0 || to - start < seconds.length)
+                return false;
+            var compare = Arrays.compare(data, start, start + seconds.length, seconds, 0, seconds.length);
+            if (compare != 0)
+                return compare > 0 && isDigit(data[start]);
+            var timestamp = getTimestamp(data, start, to);
+            return timestamp != null && !timestamp.isBefore(since);
+        };
+    }
+
+    static int indexOfLine(byte[] data, int from, int to, LinePredicate predicate) {
+        var lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (data[i] != '\n')
+                continue;
+            if (predicate.test(data, lineStart, i))
+                return lineStart;
+            lineStart = i + 1;
+        }
+        return lineStart < to && predicate.test(data, lineStart, to) ? lineStart : -1;
+    }
+
+    static int indexAfterLines(byte[] data, int length, long lines) {
+        if (lines <= 0)
+            return 0;
+        var index = indexOfLine(data, 0, length, lineCount(lines));
+        return index < 0 ? length : index;
+    }
+
+    static long countLines(byte[] data, int from, int to) {
+        var lines = 0L;
+        for (int i = from; i < to; i++)
+            if (data[i] == '\n')
+                lines++;
+        return lines;
+    }
+
+    static int lastLineEnd(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--)
+            if (data[i] == '\n')
+                return i + 1;
+        return 0;
+    }
+
+    static long scanForward(FileChannel channel, long position, long end, LinePredicate predicate) throws IOException {
+        var buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        var skipping = false;
+        while (position < end) {
+            var length = read(channel, buffer, position, end);
+            if (length == 0)
+                break;
+            var data = buffer.array();
+            var lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (data[i] != '\n')
+                    continue;
+                if (!skipping && predicate.test(data, lineStart, i))
+                    return position + lineStart;
+                skipping = false;
+                lineStart = i + 1;
+            }
+            if (lineStart > 0 && position + length < end) {
+                position += lineStart;
+                continue;
+            }
+            if (lineStart < length && !skipping && predicate.test(data, lineStart, length))
+                return position + lineStart;
+            skipping = lineStart < length;
+            position += length;
+        }
+        return end;
+    }
+
+    static long scanBackward(FileChannel channel, long start, long end, long lines) throws IOException {
+        if (lines <= 0)
+            return end;
+        var buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        var position = end;
+        var count = 0L;
+        while (position > start) {
+            var chunkStart = Math.max(start, position - CHUNK_SIZE);
+            var length = read(channel, buffer, chunkStart, position);
+            var data = buffer.array();
+            for (int i = length - 1; i >= 0; i--) {
+                if (data[i] != '\n' || chunkStart + i == end - 1)
+                    continue;
+                if (++count == lines)
+                    return chunkStart + i + 1;
+            }
+            position = chunkStart;
+        }
+        return start;
+    }
+
+    static int read(FileChannel channel, ByteBuffer buffer, long position, long end) throws IOException {
+        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                break;
+        }
+        return buffer.position();
+    }
+
+    private static Instant getTimestamp(byte[] data, int start, int to) {
+        var end = indexOf(data, start, to, (byte) ' ');
+        try {
+            return Instant.parse(new String(data, start, (end < 0 ? to : end) - start));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte value) {
+        for (int i = from; i < to; i++)
+            if (data[i] == value)
+                return i;
+        return -1;
+    }
+}
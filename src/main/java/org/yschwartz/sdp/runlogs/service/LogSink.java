@@ -0,0 +1,83 @@
+package org.yschwartz.sdp.runlogs.service;
+
+import static org.yschwartz.sdp.common.config.Constants.NEW_LINE;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.Getter;
+
+public class LogSink {
+    private static final byte[] NEW_LINE_BYTES = NEW_LINE.getBytes();
+    private static final Map<StreamType, byte[]> PREFIXES = new EnumMap<>(StreamType.class);
+
+    static {
+        Arrays.stream(StreamType.values()).forEach(type -> PREFIXES.put(type, "%s: ".formatted(type).getBytes()));
+    }
+
+    @Getter
+    private final String functionName;
+    @Getter
+    private final String containerName;
+    private final long capacity;
+    private final long batchSize;
+    private final LogWriterService writerService;
+    final Counter writtenCounter;
+    final Counter droppedCounter;
+
+    final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    final AtomicLong pendingBytes = new AtomicLong();
+    final AtomicLong droppedBytes = new AtomicLong();
+    final AtomicBoolean flushRequested = new AtomicBoolean();
+    final AtomicBoolean closed = new AtomicBoolean();
+
+    LogSink(String functionName, String containerName, long capacity, long batchSize, LogWriterService writerService, Counter writtenCounter, Counter droppedCounter) {
+        this.functionName = functionName;
+        this.containerName = containerName;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.writerService = writerService;
+        this.writtenCounter = writtenCounter;
+        this.droppedCounter = droppedCounter;
+    }
+
+    public void write(Frame frame) {
+        var payload = frame.getPayload();
+        var prefix = PREFIXES.get(frame.getStreamType());
+        if (payload.length > 0 && payload[payload.length - 1] == '\n')
+            write(prefix, payload);
+        else
+            write(prefix, payload, NEW_LINE_BYTES);
+    }
+
+    public void write(String line) {
+        write(line.getBytes(), NEW_LINE_BYTES);
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    private synchronized void write(byte[]... parts) {
+        var length = Arrays.stream(parts).mapToLong(part -> part.length).sum();
+        if (closed.get() || pendingBytes.get() + length > capacity) {
+            droppedBytes.addAndGet(length);
+            droppedCounter.increment(length);
+            return;
+        }
+        pendingBytes.addAndGet(length);
+        Arrays.stream(parts).map(ByteBuffer::wrap).forEach(buffers::add);
+        if (pendingBytes.get() >= batchSize && flushRequested.compareAndSet(false, true))
+            writerService.requestFlush(this);
+    }
+}
@@ -0,0 +1,363 @@
+package org.yschwartz.sdp.runlogs.service;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.yschwartz.sdp.common.service.FileService.FileType.LOGS;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.common.service.FileService;
+import org.yschwartz.sdp.runlogs.exception.ReadLogsException;
+import org.yschwartz.sdp.runlogs.exception.WriteLogsException;
+import org.yschwartz.sdp.runlogs.model.LogExtent;
+import org.yschwartz.sdp.runlogs.model.LogRun;
+import org.yschwartz.try_utils.model.Try;
+
+import lombok.extern.log4j.Log4j2;
+
+@Service
+@Log4j2
+public class LogStore {
+    public static final String SEGMENT_SUFFIX = ".seg";
+    public static final String INDEX_SUFFIX = ".idx";
+    private static final String SEGMENT_NAME = "%020d";
+
+    private final FileService fileService;
+
+    private final ConcurrentMap<String, FunctionLog> functionLogs = new ConcurrentHashMap<>();
+
+    @Value("${logs.segment.size:67108864}")
+    private long segmentSize;
+    @Value("${logs.segment.duration:86400000}")
+    private long segmentDuration;
+    @Value("${logs.compression.enabled:false}")
+    private boolean compression;
+    @Value("${logs.block-size:65536}")
+    private int blockSize;
+
+    public LogStore(FileService fileService) {
+        this.fileService = fileService;
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        functionLogs.values().forEach(functionLog -> {
+            synchronized (functionLog) {
+                Stream.concat(functionLog.open.stream(), functionLog.pending.keySet().stream()).distinct().toList().forEach(containerName -> Try.of(() -> closeRun(functionLog, containerName))
+                        .catchAny()
+                        .thenDo(e -> log.error("Failed to write pending logs of container: {}", containerName, new WriteLogsException(containerName, e)))
+                        .execute());
+                functionLog.closeActive();
+            }
+        });
+    }
+
+    public void append(String functionName, String containerName, List<ByteBuffer> batch) throws IOException {
+        var functionLog = getFunctionLog(functionName);
+        synchronized (functionLog) {
+            var pending = functionLog.pending.computeIfAbsent(containerName, name -> new ByteArrayOutputStream(blockSize));
+            for (var buffer : batch)
+                pending.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            while (pending.size() >= blockSize) {
+                var data = pending.toByteArray();
+                var length = getBlockLength(data);
+                appendBlock(functionLog, containerName, data, length);
+                pending.reset();
+                pending.write(data, length, data.length - length);
+            }
+        }
+    }
+
+    public void openRun(String functionName, String containerName) {
+        var functionLog = getFunctionLog(functionName);
+        synchronized (functionLog) {
+            functionLog.open.add(containerName);
+        }
+    }
+
+    public void closeRun(String functionName, String containerName) throws IOException {
+        var functionLog = getFunctionLog(functionName);
+        synchronized (functionLog) {
+            closeRun(functionLog, containerName);
+        }
+    }
+
+    private void closeRun(FunctionLog functionLog, String containerName) throws IOException {
+        functionLog.open.remove(containerName);
+        var pending = functionLog.pending.remove(containerName);
+        if (pending != null && pending.size() > 0)
+            appendBlock(functionLog, containerName, pending.toByteArray(), pending.size());
+    }
+
+    private int getBlockLength(byte[] data) {
+        for (int i = Math.min(blockSize, data.length) - 1; i >= 0; i--)
+            if (data[i] == '\n')
+                return i + 1;
+        for (int i = blockSize; i < data.length; i++)
+            if (data[i] == '\n')
+                return i + 1;
+        return data.length;
+    }
+
+    private void appendBlock(FunctionLog functionLog, String containerName, byte[] data, int rawLength) throws IOException {
+        var lines = Math.toIntExact(LogScanner.countLines(data, 0, rawLength));
+        if (!compression) {
+            append(functionLog, containerName, new ByteBuffer[]{ByteBuffer.wrap(data, 0, rawLength)}, rawLength, lines, false);
+            return;
+        }
+        var compressed = new ByteArrayOutputStream(rawLength / 4 + 64);
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(data, 0, rawLength);
+        }
+        append(functionLog, containerName, new ByteBuffer[]{ByteBuffer.wrap(compressed.toByteArray())}, rawLength, lines, true);
+    }
+
+    private void append(FunctionLog functionLog, String containerName, ByteBuffer[] buffers, int rawLength, int lines, boolean compressed) throws IOException {
+        synchronized (functionLog) {
+            var now = System.currentTimeMillis();
+            var segment = getActiveSegment(functionLog, now);
+            var offset = segment.channel.size();
+            var length = 0L;
+            var last = buffers[buffers.length - 1];
+            while (last.hasRemaining())
+                length += segment.channel.write(buffers);
+            var extent = new LogExtent(containerName, segment.id, segment.dataPath, offset, length, rawLength, lines, compressed, now);
+            writeIndexEntry(segment.index, extent);
+            segment.size = offset + length;
+            segment.lastTimestamp = now;
+            functionLog.add(extent);
+        }
+    }
+
+    public Optional<LogRun> getRun(String functionName, String containerName) {
+        var functionLog = getFunctionLog(functionName);
+        synchronized (functionLog) {
+            if (!functionLog.runs.containsKey(containerName) && !functionLog.pending.containsKey(containerName) && !functionLog.open.contains(containerName))
+                return Optional.empty();
+            var pending = Optional.ofNullable(functionLog.pending.get(containerName)).map(ByteArrayOutputStream::toByteArray).orElseGet(() -> new byte[0]);
+            return Optional.of(new LogRun(List.copyOf(functionLog.runs.getOrDefault(containerName, List.of())), pending));
+        }
+    }
+
+    public List<String> getContainerNames(String functionName) {
+        var functionLog = getFunctionLog(functionName);
+        synchronized (functionLog) {
+            return Stream.concat(functionLog.runs.keySet().stream(), functionLog.open.stream()).distinct().toList();
+        }
+    }
+
+    public byte[] read(LogExtent extent) {
+        try (var channel = FileChannel.open(extent.getPath(), READ)) {
+            var buffer = ByteBuffer.allocate(Math.toIntExact(extent.getLength()));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, extent.getOffset() + buffer.position()) < 0)
+                    throw new EOFException(extent.getPath().toString());
+            }
+            if (!extent.isCompressed())
+                return buffer.array();
+            try (var gzip = new GZIPInputStream(new ByteArrayInputStream(buffer.array()))) {
+                return gzip.readNBytes(Math.toIntExact(extent.getRawLength()));
+            }
+        } catch (IOException e) {
+            throw new ReadLogsException(extent.getContainerName(), e);
+        }
+    }
+
+    public void deleteBefore(LocalDateTime before) {
+        var beforeMillis = before.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        fileService.listDirectories(LOGS).stream()
+                .map(File::getName)
+                .map(functionName -> functionLogs.compute(functionName, (name, loaded) -> {
+                    if (loaded == null)
+                        deleteBefore(name, beforeMillis);
+                    return loaded;
+                }))
+                .filter(Objects::nonNull)
+                .forEach(functionLog -> deleteBefore(functionLog, beforeMillis));
+    }
+
+    private void deleteBefore(String functionName, long beforeMillis) {
+        fileService.listFiles(LOGS, functionName).stream()
+                .filter(file -> file.getName().endsWith(INDEX_SUFFIX))
+                .map(this::getSegment)
+                .filter(segment -> Math.max(segment.creationTime, segment.dataPath.toFile().lastModified()) < beforeMillis)
+                .forEach(this::delete);
+    }
+
+    private void deleteBefore(FunctionLog functionLog, long beforeMillis) {
+        synchronized (functionLog) {
+            var expired = functionLog.segments.values().stream()
+                    .filter(segment -> segment != functionLog.active && segment.lastTimestamp < beforeMillis)
+                    .toList();
+            expired.forEach(this::delete);
+            expired.forEach(segment -> functionLog.segments.remove(segment.id));
+            functionLog.runs.values().forEach(extents -> extents.removeIf(extent -> !functionLog.segments.containsKey(extent.getSegmentId())));
+            functionLog.runs.values().removeIf(List::isEmpty);
+        }
+    }
+
+    public void delete(String functionName) {
+        Optional.ofNullable(functionLogs.remove(functionName)).ifPresent(functionLog -> {
+            synchronized (functionLog) {
+                functionLog.closeActive();
+                functionLog.segments.values().forEach(this::delete);
+            }
+        });
+    }
+
+    private FunctionLog getFunctionLog(String functionName) {
+        return functionLogs.computeIfAbsent(functionName, this::load);
+    }
+
+    private Segment getActiveSegment(FunctionLog functionLog, long now) throws IOException {
+        var active = functionLog.active;
+        if (active != null && active.size < segmentSize && now - active.creationTime < segmentDuration)
+            return active;
+        functionLog.closeActive();
+        var id = functionLog.segments.keySet().stream().max(Comparator.naturalOrder()).map(last -> last + 1).orElse(0L);
+        var segment = new Segment(id, getPath(functionLog.functionName, id, SEGMENT_SUFFIX), getPath(functionLog.functionName, id, INDEX_SUFFIX), now);
+        segment.channel = FileChannel.open(segment.dataPath, CREATE, WRITE, APPEND);
+        segment.index = new DataOutputStream(Channels.newOutputStream(FileChannel.open(segment.indexPath, CREATE, WRITE, APPEND)));
+        functionLog.segments.put(id, segment);
+        functionLog.active = segment;
+        return segment;
+    }
+
+    private FunctionLog load(String functionName) {
+        var functionLog = new FunctionLog(functionName);
+        fileService.listFiles(LOGS, functionName).stream()
+                .filter(file -> file.getName().endsWith(INDEX_SUFFIX))
+                .sorted(Comparator.comparing(File::getName))
+                .forEach(file -> load(functionLog, file));
+        return functionLog;
+    }
+
+    private void load(FunctionLog functionLog, File indexFile) {
+        var segment = getSegment(indexFile);
+        functionLog.segments.put(segment.id, segment);
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            while (true) {
+                var extent = readIndexEntry(input, segment);
+                segment.size = Math.max(segment.size, extent.getOffset() + extent.getLength());
+                segment.lastTimestamp = Math.max(segment.lastTimestamp, extent.getTimestamp());
+                functionLog.add(extent);
+            }
+        } catch (EOFException e) {
+            log.debug("Loaded log segment: {}", indexFile);
+        } catch (IOException e) {
+            log.error("Failed to load log segment: {}", indexFile, new ReadLogsException(functionLog.functionName, e));
+        }
+    }
+
+    private Segment getSegment(File indexFile) {
+        var id = Long.parseLong(indexFile.getName().substring(0, indexFile.getName().length() - INDEX_SUFFIX.length()));
+        return new Segment(id, getPath(indexFile.getParentFile().getName(), id, SEGMENT_SUFFIX), indexFile.toPath(), indexFile.lastModified());
+    }
+
+    private static void writeIndexEntry(DataOutputStream index, LogExtent extent) throws IOException {
+        index.writeUTF(extent.getContainerName());
+        index.writeLong(extent.getOffset());
+        index.writeLong(extent.getLength());
+        index.writeLong(extent.getRawLength());
+        index.writeInt(extent.getLines());
+        index.writeBoolean(extent.isCompressed());
+        index.writeLong(extent.getTimestamp());
+        index.flush();
+    }
+
+    private static LogExtent readIndexEntry(DataInputStream input, Segment segment) throws IOException {
+        return new LogExtent(input.readUTF(), segment.id, segment.dataPath, input.readLong(), input.readLong(), input.readLong(), input.readInt(), input.readBoolean(), input.readLong());
+    }
+
+    private void delete(Segment segment) {
+        log.info("Deleting log segment: {}", segment.dataPath);
+        Try.of(() -> Files.deleteIfExists(segment.dataPath))
+                .andThen(() -> Files.deleteIfExists(segment.indexPath))
+                .catchAny()
+                .thenDo(e -> log.error("Failed to delete log segment: {}", segment.dataPath, new WriteLogsException(segment.dataPath.toString(), e)))
+                .execute();
+    }
+
+    private Path getPath(String functionName, long id, String suffix) {
+        return fileService.getFile(LOGS, functionName, SEGMENT_NAME.formatted(id) + suffix).toPath();
+    }
+
+    private static class Segment {
+        private final long id;
+        private final Path dataPath;
+        private final Path indexPath;
+        private final long creationTime;
+        private long size;
+        private long lastTimestamp;
+        private FileChannel channel;
+        private DataOutputStream index;
+
+        private Segment(long id, Path dataPath, Path indexPath, long creationTime) {
+            this.id = id;
+            this.dataPath = dataPath;
+            this.indexPath = indexPath;
+            this.creationTime = creationTime;
+        }
+    }
+
+    private static class FunctionLog {
+        private final String functionName;
+        private final Map<Long, Segment> segments = new LinkedHashMap<>();
+        private final Map<String, List<LogExtent>> runs = new LinkedHashMap<>();
+        private final Map<String, ByteArrayOutputStream> pending = new LinkedHashMap<>();
+        private final Set<String> open = new LinkedHashSet<>();
+        private Segment active;
+
+        private FunctionLog(String functionName) {
+            this.functionName = functionName;
+        }
+
+        private void add(LogExtent extent) {
+            runs.computeIfAbsent(extent.getContainerName(), name -> new ArrayList<>()).add(extent);
+        }
+
+        private void closeActive() {
+            Optional.ofNullable(active).ifPresent(segment -> {
+                Optional.ofNullable(segment.channel).ifPresent(channel -> Try.of(channel::close).execute());
+                Optional.ofNullable(segment.index).ifPresent(index -> Try.of(index::close).execute());
+                segment.channel = null;
+                segment.index = null;
+            });
+            active = null;
+        }
+    }
+}
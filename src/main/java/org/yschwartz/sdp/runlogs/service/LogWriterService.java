@@ -0,0 +1,114 @@
+package org.yschwartz.sdp.runlogs.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.runlogs.exception.WriteLogsException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+@Log4j2
+public class LogWriterService {
+    private static final String WRITTEN_METRIC = "sdp.logs.written.bytes";
+    private static final String DROPPED_METRIC = "sdp.logs.dropped.bytes";
+    private static final String FUNCTION_TAG = "function";
+
+    private final LogStore logStore;
+    private final MeterRegistry meterRegistry;
+
+    private final Scheduler scheduler = Schedulers.newSingle("log-writer");
+    private final Set<LogSink> sinks = ConcurrentHashMap.newKeySet();
+
+    @Value("${logs.writer.capacity:4194304}")
+    private long capacity;
+    @Value("${logs.writer.batch:65536}")
+    private long batchSize;
+    @Value("${logs.writer.interval:200}")
+    private long flushInterval;
+
+    public LogWriterService(LogStore logStore, MeterRegistry meterRegistry) {
+        this.logStore = logStore;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void startFlushing() {
+        scheduler.schedulePeriodically(() -> sinks.forEach(this::flush), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        Mono.fromRunnable(() -> sinks.forEach(this::closeSink)).subscribeOn(scheduler).block();
+        scheduler.dispose();
+    }
+
+    public LogSink open(String functionName, String containerName) {
+        logStore.openRun(functionName, containerName);
+        var sink = new LogSink(functionName, containerName, capacity, batchSize, this,
+                meterRegistry.counter(WRITTEN_METRIC, FUNCTION_TAG, functionName),
+                meterRegistry.counter(DROPPED_METRIC, FUNCTION_TAG, functionName));
+        sinks.add(sink);
+        return sink;
+    }
+
+    public Mono<Void> close(LogSink sink) {
+        return Mono.<Void>fromRunnable(() -> closeSink(sink)).subscribeOn(scheduler);
+    }
+
+    void requestFlush(LogSink sink) {
+        scheduler.schedule(() -> flush(sink));
+    }
+
+    private void flush(LogSink sink) {
+        sink.flushRequested.set(false);
+        var batch = new ArrayList<ByteBuffer>();
+        long bytes = 0;
+        ByteBuffer buffer;
+        while ((buffer = sink.buffers.poll()) != null) {
+            batch.add(buffer);
+            bytes += buffer.remaining();
+        }
+        if (batch.isEmpty())
+            return;
+        try {
+            logStore.append(sink.getFunctionName(), sink.getContainerName(), batch);
+            sink.writtenCounter.increment(bytes);
+        } catch (IOException e) {
+            log.error("Failed to write {} bytes of logs", bytes, new WriteLogsException(sink.getContainerName(), e));
+            sink.droppedBytes.addAndGet(bytes);
+            sink.droppedCounter.increment(bytes);
+        } finally {
+            sink.pendingBytes.addAndGet(-bytes);
+        }
+    }
+
+    private void closeSink(LogSink sink) {
+        synchronized (sink) {
+            if (!sink.closed.compareAndSet(false, true))
+                return;
+        }
+        flush(sink);
+        try {
+            logStore.closeRun(sink.getFunctionName(), sink.getContainerName());
+        } catch (IOException e) {
+            log.error("Failed to write pending logs of container: {}", sink.getContainerName(), new WriteLogsException(sink.getContainerName(), e));
+        }
+        sinks.remove(sink);
+        if (sink.getDroppedBytes() > 0)
+            log.warn("Dropped {} bytes of logs of container: {}", sink.getDroppedBytes(), sink.getContainerName());
+    }
+}
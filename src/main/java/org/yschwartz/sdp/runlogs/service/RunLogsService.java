@@ -1,60 +1,91 @@
 package org.yschwartz.sdp.runlogs.service;
 
-import static org.yschwartz.sdp.common.config.Constants.CONTAINER_NAME_DELIMITER;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.yschwartz.sdp.common.config.Constants.LOG_FILE_SUFFIX;
 import static org.yschwartz.sdp.common.service.FileService.FileType.LOGS;
 import static org.yschwartz.sdp.common.util.StringUtils.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.yschwartz.sdp.common.service.FileService;
 import org.yschwartz.sdp.common.util.StringUtils;
+import org.yschwartz.sdp.runlogs.exception.InvalidLogQueryException;
 import org.yschwartz.sdp.runlogs.exception.ReadLogsException;
 import org.yschwartz.sdp.runlogs.exception.RunLogsNotFoundException;
+import org.yschwartz.sdp.runlogs.model.LogExtent;
+import org.yschwartz.sdp.runlogs.model.LogQuery;
+import org.yschwartz.sdp.runlogs.model.LogRun;
+import org.yschwartz.try_utils.model.Try;
 
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Service
 public class RunLogsService {
 
     private final FileService fileService;
+    private final LogStore logStore;
+
+    private final ConcurrentMap<String, List<String>> legacyContainerNames = new ConcurrentHashMap<>();
 
     @Value("${logs.header.separator.char:=}")
     private char separatorChar;
     @Value("${logs.header.separator.length:50}")
     private int separatorLength;
 
-    public RunLogsService(FileService fileService) {
+    public RunLogsService(FileService fileService, LogStore logStore) {
         this.fileService = fileService;
+        this.logStore = logStore;
     }
 
-    public Flux<String> getLogs(String containerName) {
-        var functionName = containerName.split(CONTAINER_NAME_DELIMITER)[0];
-        var logFile = fileService.getFile(LOGS, functionName, getLogFileName(containerName));
-        return readFile(logFile);
+    public Flux<String> getLogs(String containerName, LogQuery query) {
+        validate(query);
+        return readRun(containerName, query);
     }
 
-    public Flux<String> getAllLogs(List<String> functionNames, List<String> containerNames, LocalDateTime from, LocalDateTime to) {
-        var functionDirs = Optional.ofNullable(functionNames)
+    public Flux<String> getAllLogs(List<String> functionNames, List<String> containerNames, LocalDateTime from, LocalDateTime to, LogQuery query) {
+        validate(query);
+        var functions = Optional.ofNullable(functionNames)
                 .filter(Predicate.not(List::isEmpty))
-                .map(List::stream)
-                .map(stream -> stream.map(name -> fileService.getDirectory(LOGS, name)))
-                .orElseGet(() -> fileService.listDirectories(LOGS).stream());
-        return Flux.fromStream(functionDirs)
-                .flatMapIterable(fileService::list)
-                .filter(file -> filterByContainerName(file, containerNames))
-                .filter(file -> filterByDate(file, from, i -> i >= 0))
-                .filter(file -> filterByDate(file, to, i -> i < 0))
-                .sort(Comparator.comparing(File::getName).reversed())
-                .flatMapSequential(this::readFile);
+                .orElseGet(() -> fileService.listDirectories(LOGS).stream().map(File::getName).collect(Collectors.toList()));
+        return Flux.fromIterable(functions)
+                .flatMapIterable(this::getContainerNames)
+                .filter(name -> filterByContainerName(name, containerNames))
+                .filter(name -> filterByDate(name, from, i -> i >= 0))
+                .filter(name -> filterByDate(name, to, i -> i < 0))
+                .sort(Comparator.<String>naturalOrder().reversed())
+                .concatMap(containerName -> readRun(containerName, query));
+    }
+
+    public LogRun getRun(String containerName) {
+        var functionName = getFunctionName(containerName);
+        return logStore.getRun(functionName, containerName).orElseGet(() -> {
+            var file = fileService.getFile(LOGS, functionName, getLogFileName(containerName));
+            if (!file.exists())
+                throw new RunLogsNotFoundException(file.getName());
+            var length = file.length();
+            return new LogRun(List.of(new LogExtent(containerName, -1, file.toPath(), 0, length, length, 0, false, file.lastModified())), new byte[0]);
+        });
     }
 
     public void deleteByDateBefore(LocalDateTime before) {
@@ -62,32 +93,245 @@ public class RunLogsService {
                 .stream()
                 .map(fileService::list)
                 .flatMap(List::stream)
-                .filter(file -> filterByDate(file, before, i -> i < 0))
+                .filter(RunLogsService::isLegacyLogFile)
+                .filter(file -> filterByDate(getContainerName(file), before, i -> i < 0))
                 .forEach(File::delete);
+        legacyContainerNames.clear();
+        logStore.deleteBefore(before);
+    }
+
+    public void deleteLogs(String functionName) {
+        logStore.delete(functionName);
+        legacyContainerNames.remove(functionName);
+    }
+
+    private List<String> getContainerNames(String functionName) {
+        var legacy = legacyContainerNames.computeIfAbsent(functionName, name -> fileService.listFiles(LOGS, name).stream()
+                .filter(RunLogsService::isLegacyLogFile)
+                .map(RunLogsService::getContainerName)
+                .collect(Collectors.toList()));
+        return Stream.concat(logStore.getContainerNames(functionName).stream(), legacy.stream())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private Flux<String> readRun(String containerName, LogQuery query) {
+        var functionName = getFunctionName(containerName);
+        var fileName = getLogFileName(containerName);
+        return logStore.getRun(functionName, containerName)
+                .map(run -> Flux.concat(getFirstLines(fileName), readRun(run, query))
+                        .onErrorMap(e -> !(e instanceof ReadLogsException), e -> new ReadLogsException(containerName, e)))
+                .orElseGet(() -> readFile(fileService.getFile(LOGS, functionName, fileName), query));
+    }
+
+    private Flux<String> readRun(LogRun run, LogQuery query) {
+        if (!query.isSliced())
+            return Flux.fromIterable(run.getExtents())
+                    .concatMap(extent -> Mono.fromCallable(() -> new String(logStore.read(extent))))
+                    .concatWith(Mono.just(run.getPending()).filter(pending -> pending.length > 0).map(String::new));
+        return Mono.fromCallable(() -> getPieces(run, query.getSince()))
+                .flatMapMany(pieces -> slice(pieces, query));
+    }
+
+    private List<Piece> getPieces(LogRun run, LocalDateTime since) {
+        var pieces = new ArrayList<Piece>(run.getExtents().size() + 1);
+        if (since == null) {
+            run.getExtents().forEach(extent -> pieces.add(new Piece(extent)));
+            pieces.add(new Piece(run.getPending()));
+            return pieces;
+        }
+        var sinceInstant = toInstant(since);
+        for (var extent : run.getExtents()) {
+            if (!pieces.isEmpty())
+                pieces.add(new Piece(extent));
+            else if (extent.getTimestamp() >= sinceInstant.toEpochMilli())
+                getPieceSince(logStore.read(extent), sinceInstant).ifPresent(pieces::add);
+        }
+        if (!pieces.isEmpty())
+            pieces.add(new Piece(run.getPending()));
+        else
+            getPieceSince(run.getPending(), sinceInstant).ifPresent(pieces::add);
+        return pieces;
+    }
+
+    private Optional<Piece> getPieceSince(byte[] data, Instant since) {
+        var start = LogScanner.indexOfLine(data, 0, data.length, LogScanner.since(since));
+        return start < 0 ? Optional.empty() : Optional.of(new Piece(Arrays.copyOfRange(data, start, data.length)));
     }
 
-    private Flux<String> readFile(File file) {
+    private Flux<String> slice(List<Piece> pieces, LogQuery query) {
+        var unit = getUnit(query);
+        var total = pieces.stream().mapToLong(piece -> piece.size(unit)).sum();
+        var start = getStart(total, query);
+        var end = getEnd(start, total, query);
+        var selected = new ArrayList<Mono<String>>();
+        var position = 0L;
+        for (var piece : pieces) {
+            var size = piece.size(unit);
+            if (position + size > start && position < end) {
+                var from = Math.max(start - position, 0);
+                var to = Math.min(end - position, size);
+                selected.add(Mono.fromCallable(() -> piece.read(from, to, unit)));
+            }
+            position += size;
+        }
+        return Flux.concat(selected);
+    }
+
+    private Flux<String> readFile(File file, LogQuery query) {
         var fileName = file.getName();
         if (!file.exists())
             return Flux.error(() -> new RunLogsNotFoundException(fileName));
-        return Flux.concat(getFirstLines(fileName), Flux.using(() -> Files.lines(file.toPath()).map(StringUtils::appendNewLine), Flux::fromStream, Stream::close))
+        var lines = query.isSliced()
+                ? sliceFile(file.toPath(), query)
+                : Flux.using(() -> Files.lines(file.toPath()).map(StringUtils::appendNewLine), Flux::fromStream, Stream::close);
+        return Flux.concat(getFirstLines(fileName), lines)
                 .onErrorMap(e -> new ReadLogsException(file.getName(), e));
     }
 
+    private Flux<String> sliceFile(Path path, LogQuery query) {
+        return Flux.using(() -> FileChannel.open(path, READ),
+                channel -> Mono.fromCallable(() -> getFileSlice(channel, query)).flatMapMany(slice -> readFileSlice(channel, slice)),
+                channel -> Try.of(channel::close).execute());
+    }
+
+    private static FileSlice getFileSlice(FileChannel channel, LogQuery query) throws IOException {
+        var size = channel.size();
+        var base = query.getSince() == null ? 0 : LogScanner.scanForward(channel, 0, size, LogScanner.since(toInstant(query.getSince())));
+        if (getUnit(query) == LogQuery.Unit.BYTES) {
+            var start = getStart(size - base, query);
+            return new FileSlice(base + start, base + getEnd(start, size - base, query), Long.MAX_VALUE);
+        }
+        var lines = Optional.ofNullable(query.getLimit()).orElse(Long.MAX_VALUE);
+        if (query.getTail() != null)
+            return new FileSlice(LogScanner.scanBackward(channel, base, size, query.getTail()), size, lines);
+        var offset = Optional.ofNullable(query.getOffset()).orElse(0L);
+        return new FileSlice(offset > 0 ? LogScanner.scanForward(channel, base, size, LogScanner.lineCount(offset)) : base, size, lines);
+    }
+
+    private static Flux<String> readFileSlice(FileChannel channel, FileSlice slice) {
+        var buffer = ByteBuffer.allocate(LogScanner.CHUNK_SIZE);
+        return Flux.generate(() -> slice, (state, sink) -> {
+            if (state.start >= state.end || state.lines <= 0) {
+                sink.complete();
+                return state;
+            }
+            try {
+                var length = LogScanner.read(channel, buffer, state.start, state.end);
+                if (length == 0) {
+                    sink.complete();
+                    return state;
+                }
+                var data = buffer.array();
+                var lineEnd = state.start + length < state.end ? LogScanner.lastLineEnd(data, length) : length;
+                var cut = lineEnd > 0 ? lineEnd : length;
+                if (state.lines < Long.MAX_VALUE)
+                    cut = Math.min(cut, LogScanner.indexAfterLines(data, cut, state.lines));
+                sink.next(new String(data, 0, cut));
+                return new FileSlice(state.start + cut, state.end, state.lines - LogScanner.countLines(data, 0, cut));
+            } catch (IOException e) {
+                sink.error(e);
+                return state;
+            }
+        });
+    }
+
+    private static void validate(LogQuery query) {
+        validate("tail", query.getTail());
+        validate("offset", query.getOffset());
+        validate("limit", query.getLimit());
+    }
+
+    private static void validate(String parameter, Long value) {
+        if (value != null && value < 0)
+            throw new InvalidLogQueryException(parameter, value);
+    }
+
+    private static LogQuery.Unit getUnit(LogQuery query) {
+        return Optional.ofNullable(query.getUnit()).orElse(LogQuery.Unit.LINES);
+    }
+
+    private static long getStart(long total, LogQuery query) {
+        if (query.getTail() != null)
+            return Math.max(total - query.getTail(), 0);
+        return Math.min(Optional.ofNullable(query.getOffset()).orElse(0L), total);
+    }
+
+    private static long getEnd(long start, long total, LogQuery query) {
+        return Optional.ofNullable(query.getLimit()).map(limit -> Math.min(start + limit, total)).orElse(total);
+    }
+
+    private static Instant toInstant(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
     private Flux<String> getFirstLines(String fileName) {
         return Flux.just(getSeparator(separatorLength, separatorChar), fileName, getSeparator(separatorLength, separatorChar)).map(StringUtils::appendNewLine);
     }
 
-    private static boolean filterByContainerName(File file, List<String> containerNames) {
-        return containerNames == null || containerNames.size() == 0
-                || containerNames.stream().anyMatch(name -> file.getName().equals(getLogFileName(name)));
+    private class Piece {
+        private final LogExtent extent;
+        private final byte[] data;
+        private final long lines;
+        private final long length;
+
+        private Piece(LogExtent extent) {
+            this.extent = extent;
+            this.data = null;
+            this.lines = extent.getLines();
+            this.length = extent.getRawLength();
+        }
+
+        private Piece(byte[] data) {
+            this.extent = null;
+            this.data = data;
+            this.lines = LogScanner.countLines(data, 0, data.length);
+            this.length = data.length;
+        }
+
+        private long size(LogQuery.Unit unit) {
+            return unit == LogQuery.Unit.BYTES ? length : lines;
+        }
+
+        private String read(long from, long to, LogQuery.Unit unit) {
+            var bytes = data != null ? data : logStore.read(extent);
+            if (from == 0 && to == size(unit))
+                return new String(bytes);
+            var start = unit == LogQuery.Unit.BYTES ? (int) from : LogScanner.indexAfterLines(bytes, bytes.length, from);
+            var end = unit == LogQuery.Unit.BYTES ? (int) to : LogScanner.indexAfterLines(bytes, bytes.length, to);
+            return new String(bytes, start, end - start);
+        }
+    }
+
+    private static class FileSlice {
+        private final long start;
+        private final long end;
+        private final long lines;
+
+        private FileSlice(long start, long end, long lines) {
+            this.start = start;
+            this.end = end;
+            this.lines = lines;
+        }
+    }
+
+    private static boolean isLegacyLogFile(File file) {
+        return file.getName().endsWith(LOG_FILE_SUFFIX);
+    }
+
+    private static String getContainerName(File file) {
+        return file.getName().substring(0, file.getName().length() - LOG_FILE_SUFFIX.length());
+    }
+
+    private static boolean filterByContainerName(String containerName, List<String> containerNames) {
+        return containerNames == null || containerNames.size() == 0 || containerNames.contains(containerName);
     }
 
-    private static boolean filterByDate(File file, LocalDateTime date, Predicate<Integer> compareResultFilter) {
+    private static boolean filterByDate(String containerName, LocalDateTime date, Predicate<Integer> compareResultFilter) {
         if (date == null)
             return true;
-        var fileTimestamp = getTimestampFromLogFileName(file.getName());
+        var timestamp = getTimestampFromContainerName(containerName);
         var dateTimestamp = StringUtils.getFormattedTimestamp(date);
-        return compareResultFilter.test(fileTimestamp.compareTo(dateTimestamp));
+        return compareResultFilter.test(timestamp.compareTo(dateTimestamp));
     }
 }
@@ -1,5 +1,7 @@
 package org.yschwartz.sdp.schedule.model;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 import org.springframework.scheduling.Trigger;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -15,6 +17,21 @@ import lombok.Data;
 })
 public abstract class BaseSchedule {
     private boolean on;
+    private Long jitter;
+    private JitterMode jitterMode;
+    private OverlapPolicy overlapPolicy;
+
+    public enum JitterMode {RANDOM, HASH}
+
+    public enum OverlapPolicy {ALLOW, SKIP, QUEUE_ONE, CANCEL_PREVIOUS}
 
     public abstract Trigger getTrigger();
+
+    public long computeJitter(String name) {
+        if (jitter == null || jitter <= 0)
+            return 0;
+        if (jitterMode == JitterMode.HASH)
+            return Math.floorMod(name.hashCode(), jitter + 1);
+        return ThreadLocalRandom.current().nextLong(jitter + 1);
+    }
 }
@@ -0,0 +1,11 @@
+package org.yschwartz.sdp.schedule.model;
+
+import java.time.LocalDateTime;
+
+import lombok.Data;
+
+@Data
+public class Firing {
+    private final LocalDateTime scheduledTime;
+    private final LocalDateTime firedTime;
+}
@@ -0,0 +1,17 @@
+package org.yschwartz.sdp.schedule.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+
+@Data
+@Document
+public class ScheduleLease {
+    @Id
+    private String id;
+    private String owner;
+    private Instant expiresAt;
+}
@@ -1,11 +1,10 @@
 package org.yschwartz.sdp.schedule.model;
 
-import java.util.concurrent.ScheduledFuture;
-
 import lombok.Data;
+import reactor.core.Disposable;
 
 @Data
 public class ScheduledTask {
     private final BaseSchedule schedule;
-    private final ScheduledFuture<?> task;
+    private final Disposable task;
 }
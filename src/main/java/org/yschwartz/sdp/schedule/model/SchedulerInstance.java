@@ -0,0 +1,16 @@
+package org.yschwartz.sdp.schedule.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+
+@Data
+@Document
+public class SchedulerInstance {
+    @Id
+    private String id;
+    private Instant heartbeat;
+}
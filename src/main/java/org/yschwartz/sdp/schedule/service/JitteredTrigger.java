@@ -0,0 +1,45 @@
+package org.yschwartz.sdp.schedule.service;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+class JitteredTrigger implements Trigger {
+    private final Trigger trigger;
+    private final LongSupplier jitter;
+    private volatile long scheduled;
+    private volatile long offset;
+
+    JitteredTrigger(Trigger trigger, LongSupplier jitter) {
+        this.trigger = trigger;
+        this.jitter = jitter;
+    }
+
+    @Override
+    public Date nextExecutionTime(TriggerContext context) {
+        var next = trigger.nextExecutionTime(unjitter(context));
+        if (next == null)
+            return null;
+        offset = jitter.getAsLong();
+        scheduled = next.getTime();
+        return new Date(scheduled + offset);
+    }
+
+    long getScheduled() {
+        return scheduled;
+    }
+
+    private TriggerContext unjitter(TriggerContext context) {
+        if (context.lastScheduledExecutionTime() == null)
+            return context;
+        return new SimpleTriggerContext(new Date(scheduled), shift(context.lastActualExecutionTime()), shift(context.lastCompletionTime()));
+    }
+
+    private Date shift(Date time) {
+        return Optional.ofNullable(time).map(date -> new Date(date.getTime() - offset)).orElse(null);
+    }
+}
@@ -0,0 +1,197 @@
+package org.yschwartz.sdp.schedule.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.codefunction.model.CodeFunction;
+import org.yschwartz.sdp.codefunction.service.CodeFunctionCache;
+import org.yschwartz.sdp.schedule.model.BaseSchedule;
+import org.yschwartz.sdp.schedule.model.ScheduleLease;
+import org.yschwartz.sdp.schedule.model.SchedulerInstance;
+
+import lombok.extern.log4j.Log4j2;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@Log4j2
+public class ScheduleLeaseService {
+    private static final String ID_FIELD = "_id";
+    private static final String OWNER_FIELD = "owner";
+    private static final String EXPIRES_AT_FIELD = "expiresAt";
+    private static final String HEARTBEAT_FIELD = "heartbeat";
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final CodeFunctionCache codeFunctionCache;
+
+    private final Map<String, Instant> ownedLeases = new ConcurrentHashMap<>();
+    private Disposable renewal;
+
+    @Value("${schedule.coordination.enabled:false}")
+    private boolean enabled;
+    @Value("${schedule.coordination.instance-id:}")
+    private String instanceId;
+    @Value("${schedule.lease.duration:15000}")
+    private long leaseDuration;
+    @Value("${schedule.lease.renew-interval:5000}")
+    private long renewInterval;
+
+    public ScheduleLeaseService(ReactiveMongoTemplate reactiveMongoTemplate, CodeFunctionCache codeFunctionCache) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.codeFunctionCache = codeFunctionCache;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled)
+            return;
+        if (instanceId == null || instanceId.isBlank())
+            instanceId = UUID.randomUUID().toString();
+        log.info("Coordinating schedules as instance: {}", instanceId);
+        renewal = Flux.interval(Duration.ZERO, Duration.ofMillis(renewInterval))
+                .concatMap(x -> renew()
+                        .doOnError(e -> log.error("Failed to renew schedule leases", e))
+                        .onErrorResume(e -> Mono.empty()))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled)
+            return;
+        renewal.dispose();
+        ownedLeases.clear();
+        reactiveMongoTemplate.remove(Query.query(Criteria.where(OWNER_FIELD).is(instanceId)), ScheduleLease.class)
+                .then(reactiveMongoTemplate.remove(Query.query(Criteria.where(ID_FIELD).is(instanceId)), SchedulerInstance.class))
+                .onErrorResume(e -> Mono.empty())
+                .block(Duration.ofMillis(renewInterval));
+    }
+
+    public boolean isOwner(String functionName) {
+        if (!enabled)
+            return true;
+        return Optional.ofNullable(ownedLeases.get(functionName)).filter(Instant.now()::isBefore).isPresent();
+    }
+
+    private Mono<Void> renew() {
+        var now = Instant.now();
+        return heartbeat(now)
+                .then(getLiveInstances(now))
+                .zipWith(getScheduledFunctions())
+                .flatMap(instancesAndFunctions -> {
+                    var instances = instancesAndFunctions.getT1();
+                    var preferred = instancesAndFunctions.getT2().stream()
+                            .filter(functionName -> isPreferredOwner(functionName, instances))
+                            .collect(Collectors.toSet());
+                    var renewed = ownedLeases.entrySet().stream()
+                            .filter(lease -> preferred.contains(lease.getKey()) && lease.getValue().isAfter(now))
+                            .map(Map.Entry::getKey)
+                            .collect(Collectors.toSet());
+                    var claimed = preferred.stream().filter(Predicate.not(renewed::contains)).toList();
+                    var released = ownedLeases.keySet().stream().filter(Predicate.not(preferred::contains)).toList();
+                    return Mono.when(
+                            renewAll(renewed, now),
+                            Flux.fromIterable(claimed).flatMap(functionName -> claim(functionName, now)),
+                            Flux.fromIterable(released).flatMap(this::release));
+                });
+    }
+
+    private Mono<Void> heartbeat(Instant now) {
+        return reactiveMongoTemplate.upsert(Query.query(Criteria.where(ID_FIELD).is(instanceId)), Update.update(HEARTBEAT_FIELD, now), SchedulerInstance.class)
+                .then();
+    }
+
+    private Mono<List<String>> getLiveInstances(Instant now) {
+        return reactiveMongoTemplate.find(Query.query(Criteria.where(HEARTBEAT_FIELD).gt(now.minusMillis(leaseDuration))), SchedulerInstance.class)
+                .map(SchedulerInstance::getId)
+                .collectList();
+    }
+
+    private Mono<Set<String>> getScheduledFunctions() {
+        return codeFunctionCache.getAll()
+                .filter(function -> Optional.ofNullable(function.getSchedule()).filter(BaseSchedule::isOn).isPresent())
+                .map(CodeFunction::getName)
+                .collect(Collectors.toSet());
+    }
+
+    private boolean isPreferredOwner(String functionName, List<String> instances) {
+        return instances.stream()
+                .max(Comparator.comparingLong(instance -> score(functionName, instance)))
+                .filter(instanceId::equals)
+                .isPresent();
+    }
+
+    static long score(String functionName, String instance) {
+        try {
+            var digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            digest.update(functionName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(instance.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Mono<Void> renewAll(Set<String> functionNames, Instant now) {
+        if (functionNames.isEmpty())
+            return Mono.empty();
+        var query = Query.query(Criteria.where(OWNER_FIELD).is(instanceId).and(ID_FIELD).in(functionNames));
+        var expiresAt = now.plusMillis(leaseDuration);
+        return reactiveMongoTemplate.updateMulti(query, Update.update(EXPIRES_AT_FIELD, expiresAt), ScheduleLease.class)
+                .flatMap(result -> {
+                    if (result.getMatchedCount() < functionNames.size())
+                        return Flux.fromIterable(functionNames).flatMap(functionName -> claim(functionName, now)).then();
+                    functionNames.forEach(functionName -> ownedLeases.computeIfPresent(functionName, (name, expiration) -> expiresAt));
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> claim(String functionName, Instant now) {
+        var query = Query.query(Criteria.where(ID_FIELD).is(functionName)
+                .orOperator(Criteria.where(OWNER_FIELD).is(instanceId), Criteria.where(EXPIRES_AT_FIELD).lt(now)));
+        var expiresAt = now.plusMillis(leaseDuration);
+        var update = new Update().set(OWNER_FIELD, instanceId).set(EXPIRES_AT_FIELD, expiresAt);
+        return reactiveMongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true), ScheduleLease.class)
+                .doOnNext(lease -> {
+                    if (ownedLeases.put(functionName, expiresAt) == null)
+                        log.info("Acquired schedule lease of code function: {}", functionName);
+                })
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.fromRunnable(() -> ownedLeases.remove(functionName)))
+                .then();
+    }
+
+    private Mono<Void> release(String functionName) {
+        if (ownedLeases.remove(functionName) == null)
+            return Mono.empty();
+        log.info("Releasing schedule lease of code function: {}", functionName);
+        return reactiveMongoTemplate.remove(Query.query(Criteria.where(ID_FIELD).is(functionName).and(OWNER_FIELD).is(instanceId)), ScheduleLease.class)
+                .then();
+    }
+}
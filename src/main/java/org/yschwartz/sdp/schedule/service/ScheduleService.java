@@ -1,60 +1,83 @@
 package org.yschwartz.sdp.schedule.service;
 
-import java.util.HashMap;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 import org.yschwartz.sdp.schedule.model.BaseSchedule;
+import org.yschwartz.sdp.schedule.model.Firing;
 import org.yschwartz.sdp.schedule.model.ScheduledTask;
 
 import lombok.extern.log4j.Log4j2;
+import reactor.core.Disposable;
 
 @Service
 @Log4j2
 public class ScheduleService {
 
     private final TaskScheduler scheduler;
+    private final TimingWheelScheduler timingWheelScheduler;
 
-    private final Map<String, ScheduledTask> tasks = new HashMap<>();
+    private final Map<String, ScheduledTask> tasks = new ConcurrentHashMap<>();
 
-    public ScheduleService(TaskScheduler scheduler) {
+    public ScheduleService(TaskScheduler scheduler, ObjectProvider<TimingWheelScheduler> timingWheelScheduler) {
         this.scheduler = scheduler;
+        this.timingWheelScheduler = timingWheelScheduler.getIfAvailable();
     }
 
     public void createOrUpdateTask(String id, BaseSchedule newSchedule, Runnable task) {
-        var currentSchedule = Optional.ofNullable(tasks.get(id)).map(ScheduledTask::getSchedule).orElse(null);
-        if (Objects.equals(currentSchedule, newSchedule))
-            return;
-        if (newSchedule == null || !newSchedule.isOn())
+        createOrUpdateTask(id, newSchedule, firing -> task.run());
+    }
+
+    public void createOrUpdateTask(String id, BaseSchedule newSchedule, Consumer<Firing> task) {
+        if (newSchedule == null || !newSchedule.isOn()) {
             deleteTask(id);
-        else
-            createOrUpdate(id, newSchedule, task);
+            return;
+        }
+        tasks.compute(id, (key, current) -> {
+            if (current != null && Objects.equals(current.getSchedule(), newSchedule))
+                return current;
+            Optional.ofNullable(current).ifPresent(scheduledTask -> stopTask(id, scheduledTask));
+            return createTask(id, newSchedule, task);
+        });
     }
 
     public void deleteTask(String id) {
-        stopTask(id);
-        tasks.remove(id);
+        Optional.ofNullable(tasks.remove(id)).ifPresent(task -> stopTask(id, task));
     }
 
     public void deleteAll() {
-        tasks.forEach((id, x) -> stopTask(id));
-        tasks.clear();
+        tasks.keySet().forEach(this::deleteTask);
     }
 
-    private void createOrUpdate(String id, BaseSchedule schedule, Runnable task) {
-        stopTask(id);
-        var scheduledTask = scheduler.schedule(task, schedule.getTrigger());
-        tasks.put(id, new ScheduledTask(schedule, scheduledTask));
+    private ScheduledTask createTask(String id, BaseSchedule schedule, Consumer<Firing> task) {
+        var scheduledTask = new ScheduledTask(schedule, schedule(id, schedule, task));
         log.info("Created task {} with schedule: {}", id, schedule);
+        return scheduledTask;
     }
 
-    private void stopTask(String id) {
-        Optional.ofNullable(tasks.get(id)).map(ScheduledTask::getTask).ifPresent(task -> {
-            task.cancel(false);
-            log.info("Stopped task {}", id);
-        });
+    private Disposable schedule(String id, BaseSchedule schedule, Consumer<Firing> task) {
+        if (timingWheelScheduler != null)
+            return timingWheelScheduler.schedule(task, schedule.getTrigger(), () -> schedule.computeJitter(id));
+        var trigger = new JitteredTrigger(schedule.getTrigger(), () -> schedule.computeJitter(id));
+        var future = scheduler.schedule(() -> task.accept(new Firing(toLocalDateTime(trigger.getScheduled()), LocalDateTime.now())), trigger);
+        return () -> future.cancel(false);
+    }
+
+    private static void stopTask(String id, ScheduledTask task) {
+        task.getTask().dispose();
+        log.info("Stopped task {}", id);
+    }
+
+    private static LocalDateTime toLocalDateTime(long time) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
     }
 }
@@ -1,7 +1,9 @@
 package org.yschwartz.sdp.schedule.service;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.ContextRefreshedEvent;
@@ -13,15 +15,24 @@ import org.yschwartz.sdp.codefunction.service.CodeFunctionService;
 import org.yschwartz.sdp.codetype.model.CodeType;
 import org.yschwartz.sdp.codetype.service.CodeTypeService;
 import org.yschwartz.sdp.docker.client.ReactiveDockerClient;
+import org.yschwartz.sdp.docker.model.BuildPriority;
+import org.yschwartz.sdp.docker.model.DockerHost;
 import org.yschwartz.sdp.docker.service.DockerBuildService;
+import org.yschwartz.sdp.docker.service.DockerHostService;
+import org.yschwartz.sdp.docker.service.WarmPoolService;
 import org.yschwartz.sdp.rundetails.repository.RunDetailsRepository;
+import org.yschwartz.sdp.rundetails.service.RunDetailsRetentionService;
 import org.yschwartz.sdp.runlogs.service.RunLogsService;
 import org.yschwartz.sdp.schedule.model.BaseSchedule;
 import org.yschwartz.sdp.schedule.model.CronSchedule;
 
+import com.github.dockerjava.api.command.InspectImageResponse;
+
 import lombok.extern.log4j.Log4j2;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 @Service
 @Log4j2
@@ -32,15 +43,20 @@ public class TasksService {
 
     private final CodeTypeService codeTypeService;
     private final ReactiveDockerClient reactiveDockerClient;
+    private final DockerHostService dockerHostService;
     private final DockerBuildService dockerBuildService;
     private final CodeFunctionRepository codeFunctionRepository;
     private final ScheduleService scheduleService;
     private final CodeFunctionService codeFunctionService;
     private final RunDetailsRepository runDetailsRepository;
+    private final RunDetailsRetentionService runDetailsRetentionService;
     private final RunLogsService runLogsService;
+    private final WarmPoolService warmPoolService;
 
     @Value("${docker.image.update.cron:0 0 4 * * *}")
     private String updateImagesCron;
+    @Value("${docker.image.update.parallelism:4}")
+    private int pullParallelism;
 
     @Value("${details.cleanup.cron:0 0 4 * * 0}")
     private String deleteRunDetailsCron;
@@ -52,38 +68,79 @@ public class TasksService {
     @Value("${logs.cleanup.retention:30}")
     private int logsDaysToKeep;
 
-    public TasksService(CodeTypeService codeTypeService, ReactiveDockerClient reactiveDockerClient, DockerBuildService dockerBuildService, CodeFunctionRepository codeFunctionRepository, ScheduleService scheduleService, CodeFunctionService codeFunctionService, RunDetailsRepository runDetailsRepository, RunLogsService runLogsService) {
+    @Value("${schedule.maintenance.jitter:300000}")
+    private long maintenanceJitter;
+
+    public TasksService(CodeTypeService codeTypeService, ReactiveDockerClient reactiveDockerClient, DockerHostService dockerHostService, DockerBuildService dockerBuildService, CodeFunctionRepository codeFunctionRepository, ScheduleService scheduleService, CodeFunctionService codeFunctionService, RunDetailsRepository runDetailsRepository, RunDetailsRetentionService runDetailsRetentionService, RunLogsService runLogsService, WarmPoolService warmPoolService) {
         this.codeTypeService = codeTypeService;
         this.reactiveDockerClient = reactiveDockerClient;
+        this.dockerHostService = dockerHostService;
         this.dockerBuildService = dockerBuildService;
         this.codeFunctionRepository = codeFunctionRepository;
         this.scheduleService = scheduleService;
         this.codeFunctionService = codeFunctionService;
         this.runDetailsRepository = runDetailsRepository;
+        this.runDetailsRetentionService = runDetailsRetentionService;
         this.runLogsService = runLogsService;
+        this.warmPoolService = warmPoolService;
     }
 
     @EventListener({ContextRefreshedEvent.class})
     public void startup() {
         scheduleService.deleteAll();
-        updateImages().doOnComplete(this::scheduleFunctions).subscribe();
+        warmPoolService.removeStaleContainers().thenMany(buildImages()).doOnComplete(this::scheduleFunctions).subscribe();
         scheduleService.createOrUpdateTask(UPDATE_IMAGES_TASK_ID, createCronSchedule(updateImagesCron), () -> updateImages().subscribe());
-        scheduleService.createOrUpdateTask(DELETE_DETAILS_TASK_ID, createCronSchedule(deleteRunDetailsCron), this::deleteOldRunDetails);
+        if (runDetailsRetentionService.isSweep())
+            scheduleService.createOrUpdateTask(DELETE_DETAILS_TASK_ID, createCronSchedule(deleteRunDetailsCron), this::deleteOldRunDetails);
         scheduleService.createOrUpdateTask(DELETE_LOGS_TASK_ID, createCronSchedule(deleteLogsCron), this::deleteOldLogs);
     }
 
-    private Flux<CodeFunction> updateImages() {
+    private Flux<CodeFunction> buildImages() {
+        log.info("Building images");
+        return codeFunctionRepository.findAll()
+                .flatMap(function -> dockerBuildService.build(function, false, BuildPriority.BACKGROUND).onErrorResume(e -> Mono.empty()).then(Mono.just(function)))
+                .doOnComplete(() -> log.info("Built images"));
+    }
+
+    private Mono<Void> updateImages() {
         log.info("Updating images");
+        var rebuilt = new AtomicInteger();
+        var skipped = new AtomicInteger();
         return codeTypeService.getAll()
-                .doOnNext(type -> log.debug("Updating code type: {}", type.getName()))
-                .map(type -> reactiveDockerClient.pull(type.getFrom()).then(Mono.just(type)))
-                .flatMap(Mono::flux)
-                .map(CodeType::getName)
-                .flatMap(codeFunctionRepository::findAllByCodeTypeName)
-                .flatMap(function -> dockerBuildService.build(function, true).then(Mono.just(function)))
-                .doOnNext(function -> log.debug("Updated function: {}", function.getName()))
-                .doOnError(e -> log.error("Failed to update function", e))
-                .doOnComplete(() -> log.info("Updated images"));
+                .flatMap(type -> Flux.fromIterable(dockerHostService.getHosts()).map(host -> Tuples.of(type, host)))
+                .flatMap(typeHost -> updateImage(typeHost.getT1(), typeHost.getT2()).filter(changed -> changed).map(x -> typeHost), pullParallelism)
+                .collectMultimap(typeHost -> typeHost.getT1().getName(), Tuple2::getT2)
+                .flatMapMany(changedHosts -> codeFunctionRepository.findAll()
+                        .flatMap(function -> Optional.ofNullable(changedHosts.get(function.getCodeTypeName()))
+                                .map(hosts -> refreshFunction(function, hosts).doOnSubscribe(x -> rebuilt.incrementAndGet()))
+                                .orElseGet(() -> Mono.<Void>empty().doOnSubscribe(x -> skipped.incrementAndGet()))))
+                .doOnError(e -> log.error("Failed to update images", e))
+                .then()
+                .doOnSuccess(x -> log.info("Updated images, rebuilt: {} functions, skipped: {} functions", rebuilt.get(), skipped.get()));
+    }
+
+    private Mono<Boolean> updateImage(CodeType codeType, DockerHost host) {
+        var image = codeType.getFrom();
+        return getImageId(host, image)
+                .flatMap(before -> reactiveDockerClient.pull(host, image)
+                        .then(getImageId(host, image))
+                        .map(after -> !after.equals(before)))
+                .doOnNext(changed -> log.debug("Pulled image: {} on host: {}, changed: {}", image, host, changed))
+                .onErrorResume(e -> Mono.just(false));
+    }
+
+    private Mono<String> getImageId(DockerHost host, String image) {
+        return reactiveDockerClient.getImage(host, image)
+                .map(InspectImageResponse::getId)
+                .onErrorReturn("");
+    }
+
+    private Mono<Void> refreshFunction(CodeFunction function, Collection<DockerHost> hosts) {
+        return Flux.fromIterable(hosts)
+                .flatMap(host -> dockerBuildService.refresh(host, function))
+                .doOnError(e -> log.error("Failed to update function: {}", function.getName(), e))
+                .onErrorResume(e -> Mono.empty())
+                .then();
     }
 
     private void deleteOldRunDetails() {
@@ -105,14 +162,16 @@ public class TasksService {
     private void scheduleFunctions() {
         codeFunctionRepository.findAll()
                 .filter(function -> Optional.ofNullable(function.getSchedule()).filter(BaseSchedule::isOn).isPresent())
-                .doOnNext(function -> scheduleService.createOrUpdateTask(function.getName(), function.getSchedule(), () -> codeFunctionService.triggerCodeFunction(function.getName()).subscribe()))
+                .doOnNext(codeFunctionService::scheduleCodeFunction)
                 .subscribe();
     }
 
-    private static CronSchedule createCronSchedule(String cron) {
+    private CronSchedule createCronSchedule(String cron) {
         var schedule = new CronSchedule();
         schedule.setOn(true);
         schedule.setCron(cron);
+        schedule.setJitter(maintenanceJitter);
+        schedule.setJitterMode(BaseSchedule.JitterMode.HASH);
         return schedule;
     }
 }
@@ -0,0 +1,315 @@
+package org.yschwartz.sdp.schedule.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+import org.springframework.stereotype.Service;
+import org.yschwartz.sdp.schedule.model.Firing;
+
+import lombok.extern.log4j.Log4j2;
+import reactor.core.Disposable;
+
+@Service
+@Log4j2
+@ConditionalOnProperty(name = "schedule.scheduler", havingValue = "wheel")
+public class TimingWheelScheduler {
+    private static final String TICKER_THREAD_NAME = "schedule-wheel";
+    private static final String EXECUTOR_THREAD_NAME = "schedule-exec-%d";
+
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+
+    @Value("${schedule.wheel.tick:10}")
+    private long tickMs;
+    @Value("${schedule.wheel.size:512}")
+    private int wheelSize;
+    @Value("${schedule.executor.threads:4}")
+    private int threads;
+    @Value("${schedule.smoothing.window:0}")
+    private long smoothingWindow;
+
+    private Wheel wheel;
+    private ExecutorService executor;
+    private Thread ticker;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        wheel = new Wheel(tickMs, wheelSize, System.currentTimeMillis());
+        var threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, EXECUTOR_THREAD_NAME.formatted(threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker = new Thread(this::tick, TICKER_THREAD_NAME);
+        ticker.setDaemon(true);
+        running = true;
+        ticker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        ticker.interrupt();
+        executor.shutdownNow();
+    }
+
+    public Disposable schedule(Consumer<Firing> task, Trigger trigger, LongSupplier jitter) {
+        var registration = new Registration(task, trigger, jitter);
+        registration.scheduleNext();
+        return registration;
+    }
+
+    private void add(Entry entry) {
+        if (!addToWheel(entry))
+            execute(entry);
+    }
+
+    private synchronized boolean addToWheel(Entry entry) {
+        return wheel.add(entry);
+    }
+
+    private void execute(Entry entry) {
+        if (!entry.registration.cancelled)
+            executor.execute(() -> entry.registration.fire(entry));
+    }
+
+    private void dispatch(List<Entry> due) {
+        var spread = smoothingWindow > 0 ? due.stream().filter(entry -> !entry.smoothed).count() : 0;
+        var index = 0;
+        for (var entry : due) {
+            var offset = spread > 1 && !entry.smoothed ? smoothingWindow * index++ / spread : 0;
+            if (offset > 0)
+                entry.registration.reschedule(new Entry(entry.registration, entry.scheduled, entry.expiration + offset, true));
+            else
+                execute(entry);
+        }
+    }
+
+    private void tick() {
+        while (running) {
+            try {
+                var bucket = queue.poll(tickMs, TimeUnit.MILLISECONDS);
+                while (bucket != null) {
+                    List<Entry> expired;
+                    synchronized (this) {
+                        wheel.advanceClock(bucket.getExpiration());
+                        expired = bucket.flush();
+                    }
+                    var due = new LinkedList<Entry>();
+                    expired.stream().filter(entry -> !addToWheel(entry)).forEach(due::add);
+                    dispatch(due);
+                    bucket = queue.poll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Failed to advance schedule wheel", e);
+            }
+        }
+    }
+
+    private class Registration implements Disposable {
+        private final Consumer<Firing> task;
+        private final Trigger trigger;
+        private final LongSupplier jitter;
+        private final SimpleTriggerContext context = new SimpleTriggerContext();
+        private volatile boolean cancelled;
+        private Entry entry;
+
+        private Registration(Consumer<Firing> task, Trigger trigger, LongSupplier jitter) {
+            this.task = task;
+            this.trigger = trigger;
+            this.jitter = jitter;
+        }
+
+        @Override
+        public void dispose() {
+            cancelled = true;
+            synchronized (TimingWheelScheduler.this) {
+                if (entry != null)
+                    entry.remove();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return cancelled;
+        }
+
+        private void scheduleNext() {
+            var next = trigger.nextExecutionTime(context);
+            if (next == null || cancelled)
+                return;
+            reschedule(new Entry(this, next.getTime(), next.getTime() + jitter.getAsLong(), false));
+        }
+
+        private void reschedule(Entry nextEntry) {
+            synchronized (TimingWheelScheduler.this) {
+                entry = nextEntry;
+            }
+            add(nextEntry);
+        }
+
+        private void fire(Entry firedEntry) {
+            if (cancelled)
+                return;
+            var actual = System.currentTimeMillis();
+            try {
+                task.accept(new Firing(toLocalDateTime(firedEntry.scheduled), toLocalDateTime(actual)));
+            } catch (Exception e) {
+                log.error("Scheduled task failed", e);
+            }
+            var offset = firedEntry.expiration - firedEntry.scheduled;
+            context.update(new Date(firedEntry.scheduled), new Date(actual - offset), new Date(System.currentTimeMillis() - offset));
+            scheduleNext();
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long time) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+    }
+
+    private static class Entry {
+        private final Registration registration;
+        private final long scheduled;
+        private final long expiration;
+        private final boolean smoothed;
+        private Bucket bucket;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(Registration registration, long scheduled, long expiration, boolean smoothed) {
+            this.registration = registration;
+            this.scheduled = scheduled;
+            this.expiration = expiration;
+            this.smoothed = smoothed;
+        }
+
+        private void remove() {
+            if (bucket != null)
+                bucket.remove(this);
+        }
+    }
+
+    private static class Bucket implements Delayed {
+        private final Entry root = new Entry(null, -1, -1, false);
+        private final AtomicLong expiration = new AtomicLong(-1);
+
+        private Bucket() {
+            root.previous = root;
+            root.next = root;
+        }
+
+        private long getExpiration() {
+            return expiration.get();
+        }
+
+        private boolean setExpiration(long time) {
+            return expiration.getAndSet(time) != time;
+        }
+
+        private void add(Entry entry) {
+            entry.bucket = this;
+            entry.previous = root.previous;
+            entry.next = root;
+            root.previous.next = entry;
+            root.previous = entry;
+        }
+
+        private void remove(Entry entry) {
+            entry.previous.next = entry.next;
+            entry.next.previous = entry.previous;
+            entry.bucket = null;
+            entry.previous = null;
+            entry.next = null;
+        }
+
+        private List<Entry> flush() {
+            var entries = new LinkedList<Entry>();
+            while (root.next != root) {
+                var entry = root.next;
+                remove(entry);
+                if (!entry.registration.cancelled)
+                    entries.add(entry);
+            }
+            expiration.set(-1);
+            return entries;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getExpiration(), ((Bucket) other).getExpiration());
+        }
+    }
+
+    private class Wheel {
+        private final long tick;
+        private final int size;
+        private final long interval;
+        private final Bucket[] buckets;
+        private long currentTime;
+        private Wheel overflow;
+
+        private Wheel(long tick, int size, long startTime) {
+            this.tick = tick;
+            this.size = size;
+            this.interval = tick * size;
+            this.buckets = new Bucket[size];
+            for (int i = 0; i < size; i++)
+                buckets[i] = new Bucket();
+            this.currentTime = startTime - startTime % tick;
+        }
+
+        private boolean add(Entry entry) {
+            var expiration = entry.expiration;
+            if (expiration < currentTime + tick)
+                return false;
+            if (expiration < currentTime + interval) {
+                var virtualId = expiration / tick;
+                var bucket = buckets[(int) (virtualId % size)];
+                bucket.add(entry);
+                if (bucket.setExpiration(virtualId * tick))
+                    queue.offer(bucket);
+                return true;
+            }
+            if (overflow == null)
+                overflow = new Wheel(interval, size, currentTime);
+            return overflow.add(entry);
+        }
+
+        private void advanceClock(long time) {
+            if (time < currentTime + tick)
+                return;
+            currentTime = time - time % tick;
+            if (overflow != null)
+                overflow.advanceClock(currentTime);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.yschwartz.sdp.docker.client;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yschwartz.sdp.docker.exception.ContainerNotFoundException;
+import org.yschwartz.sdp.docker.model.DockerHost;
+import org.yschwartz.sdp.docker.service.DockerHostService;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.ListContainersCmd;
+import com.github.dockerjava.api.command.RemoveContainerCmd;
+import com.github.dockerjava.api.command.StopContainerCmd;
+import com.github.dockerjava.api.model.Container;
+
+class ReactiveDockerClientTest {
+    private static final String CONTAINER_NAME = "function_._container";
+
+    private DockerClient firstClient;
+    private DockerClient secondClient;
+    private DockerHost second;
+    private DockerHostService dockerHostService;
+    private ReactiveDockerClient reactiveDockerClient;
+
+    @BeforeEach
+    void setUp() {
+        firstClient = mockClient(List.of());
+        var container = mock(Container.class);
+        when(container.getNames()).thenReturn(new String[]{"/" + CONTAINER_NAME});
+        secondClient = mockClient(List.of(container));
+        second = new DockerHost("second", secondClient, false);
+        dockerHostService = new DockerHostService(List.of(new DockerHost("first", firstClient, true), second));
+        reactiveDockerClient = new ReactiveDockerClient(dockerHostService);
+    }
+
+    @Test
+    void routesContainerCommandsToOwner() {
+        dockerHostService.setOwner(CONTAINER_NAME, second);
+        reactiveDockerClient.stop(CONTAINER_NAME).block();
+        reactiveDockerClient.remove(CONTAINER_NAME).block();
+        verify(secondClient).stopContainerCmd(CONTAINER_NAME);
+        verify(secondClient).removeContainerCmd(CONTAINER_NAME);
+        verify(firstClient, never()).stopContainerCmd(CONTAINER_NAME);
+        verify(firstClient, never()).removeContainerCmd(CONTAINER_NAME);
+    }
+
+    @Test
+    void looksUpUnknownOwnerOnHosts() {
+        reactiveDockerClient.stop(CONTAINER_NAME).block();
+        verify(secondClient).stopContainerCmd(CONTAINER_NAME);
+        verify(firstClient, never()).stopContainerCmd(CONTAINER_NAME);
+        assertSame(second, dockerHostService.getOwner(CONTAINER_NAME));
+    }
+
+    @Test
+    void failsWhenNoHostHasContainer() {
+        var missing = "function_._missing";
+        assertThrows(ContainerNotFoundException.class, () -> reactiveDockerClient.stop(missing).block());
+        verify(firstClient, never()).stopContainerCmd(missing);
+        verify(secondClient, never()).stopContainerCmd(missing);
+    }
+
+    private static DockerClient mockClient(List<Container> containers) {
+        var client = mock(DockerClient.class);
+        var listCommand = mock(ListContainersCmd.class, RETURNS_SELF);
+        when(listCommand.exec()).thenReturn(containers);
+        when(client.listContainersCmd()).thenReturn(listCommand);
+        when(client.stopContainerCmd(CONTAINER_NAME)).thenReturn(mock(StopContainerCmd.class));
+        when(client.removeContainerCmd(CONTAINER_NAME)).thenReturn(mock(RemoveContainerCmd.class));
+        return client;
+    }
+}
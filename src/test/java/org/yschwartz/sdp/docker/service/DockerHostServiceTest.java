@@ -0,0 +1,63 @@
+package org.yschwartz.sdp.docker.service;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.yschwartz.sdp.docker.exception.ContainerNotFoundException;
+import org.yschwartz.sdp.docker.model.DockerHost;
+
+import com.github.dockerjava.api.DockerClient;
+
+class DockerHostServiceTest {
+    private static final String FUNCTION_NAME = "function";
+    private static final String CONTAINER_NAME = "function_._container";
+
+    private DockerHost first;
+    private DockerHost second;
+    private DockerHostService dockerHostService;
+
+    @BeforeEach
+    void setUp() {
+        first = new DockerHost("first", mock(DockerClient.class), true);
+        second = new DockerHost("second", mock(DockerClient.class), false);
+        dockerHostService = new DockerHostService(List.of(first, second));
+        ReflectionTestUtils.setField(dockerHostService, "buildPenalty", 5);
+    }
+
+    @Test
+    void placesOnLeastLoadedHost() {
+        first.getRunning().set(3);
+        assertSame(second, dockerHostService.place(FUNCTION_NAME));
+    }
+
+    @Test
+    void prefersHostWithImageUntilBuildPenaltyIsExceeded() {
+        dockerHostService.setImage(first, FUNCTION_NAME, "image");
+        first.getRunning().set(4);
+        assertSame(first, dockerHostService.place(FUNCTION_NAME));
+        first.getRunning().set(6);
+        assertSame(second, dockerHostService.place(FUNCTION_NAME));
+    }
+
+    @Test
+    void unknownOwnerFailsInsteadOfFallingBack() {
+        assertThrows(ContainerNotFoundException.class, () -> dockerHostService.getOwner(CONTAINER_NAME));
+    }
+
+    @Test
+    void ownerFollowsRenameAndRemoval() {
+        dockerHostService.setOwner(CONTAINER_NAME, second);
+        dockerHostService.moveOwner(CONTAINER_NAME, "renamed");
+        assertSame(second, dockerHostService.getOwner("renamed"));
+        assertTrue(dockerHostService.findOwner(CONTAINER_NAME).isEmpty());
+        dockerHostService.removeOwner("renamed");
+        assertTrue(dockerHostService.findOwner("renamed").isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+package org.yschwartz.sdp.runlogs.service;
+
+import static org.yschwartz.sdp.common.service.FileService.FileType.LOGS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.test.util.ReflectionTestUtils;
+import org.yschwartz.sdp.common.service.FileService;
+
+public class LogCompressionBenchmark {
+    private static final String FUNCTION_NAME = "benchmark";
+    private static final String CONTAINER_NAME = "benchmark-20220101000000000";
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] PATHS = {"/api/items", "/api/orders", "/api/users", "/health"};
+    private static final int RAW_SIZE = 12 * 1024 * 1024;
+    private static final int FLUSH_SIZE = 4096;
+
+    public static void main(String[] args) throws IOException {
+        var raw = generate(new Random(42));
+        System.out.printf("raw: %d bytes, flush: %d bytes%n", raw.length, FLUSH_SIZE);
+        for (var blockSize : new int[]{FLUSH_SIZE, 16384, 65536, 262144})
+            run(raw, blockSize);
+    }
+
+    private static void run(byte[] raw, int blockSize) throws IOException {
+        var base = Files.createTempDirectory("sdp-logs");
+        var fileService = new FileService();
+        ReflectionTestUtils.setField(fileService, "basePath", base.toString());
+        var logStore = new LogStore(fileService);
+        ReflectionTestUtils.setField(logStore, "segmentSize", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(logStore, "segmentDuration", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(logStore, "compression", true);
+        ReflectionTestUtils.setField(logStore, "blockSize", blockSize);
+        var start = System.nanoTime();
+        for (int offset = 0; offset < raw.length; offset += FLUSH_SIZE)
+            logStore.append(FUNCTION_NAME, CONTAINER_NAME, List.of(ByteBuffer.wrap(raw, offset, Math.min(FLUSH_SIZE, raw.length - offset)).slice()));
+        logStore.closeRun(FUNCTION_NAME, CONTAINER_NAME);
+        var elapsed = (System.nanoTime() - start) / 1_000_000;
+        var run = logStore.getRun(FUNCTION_NAME, CONTAINER_NAME).orElseThrow();
+        var restored = new ByteArrayOutputStream(raw.length);
+        for (var extent : run.getExtents())
+            restored.write(logStore.read(extent));
+        var stored = fileService.listFiles(LOGS, FUNCTION_NAME).stream().mapToLong(File::length).sum();
+        System.out.printf("block-size %6d: %4d blocks, %8d bytes on disk (%.1fx), %4d ms, round trip %s%n",
+                blockSize, run.getExtents().size(), stored, (double) raw.length / stored, elapsed, Arrays.equals(raw, restored.toByteArray()) ? "ok" : "FAILED");
+        logStore.delete(FUNCTION_NAME);
+        fileService.deleteAll(FUNCTION_NAME);
+        Files.walk(base).sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+    }
+
+    private static byte[] generate(Random random) {
+        var output = new ByteArrayOutputStream(RAW_SIZE + 256);
+        var time = Instant.parse("2022-01-01T00:00:00Z");
+        var ids = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++)
+            ids.add(Long.toHexString(random.nextLong()));
+        while (output.size() < RAW_SIZE) {
+            time = time.plusNanos(random.nextInt(5_000_000));
+            var line = "%s %-5s request=%s %s/%d status=%d duration=%dms\n".formatted(time, LEVELS[random.nextInt(LEVELS.length)],
+                    ids.get(random.nextInt(ids.size())), PATHS[random.nextInt(PATHS.length)], random.nextInt(10000),
+                    random.nextInt(10) == 0 ? 500 : 200, random.nextInt(250));
+            output.writeBytes(line.getBytes());
+        }
+        return output.toByteArray();
+    }
+}
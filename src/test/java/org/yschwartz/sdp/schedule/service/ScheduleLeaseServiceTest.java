@@ -0,0 +1,126 @@
+package org.yschwartz.sdp.schedule.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.yschwartz.sdp.codefunction.model.CodeFunction;
+import org.yschwartz.sdp.codefunction.repository.CodeFunctionRepository;
+import org.yschwartz.sdp.codefunction.service.CodeFunctionCache;
+import org.yschwartz.sdp.schedule.model.FixedDelaySchedule;
+import org.yschwartz.sdp.schedule.model.ScheduleLease;
+import org.yschwartz.sdp.schedule.model.SchedulerInstance;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+
+@DataMongoTest
+class ScheduleLeaseServiceTest {
+    private static final String FUNCTION_NAME = "lease-test";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+    @Autowired
+    private CodeFunctionRepository codeFunctionRepository;
+
+    private ScheduleLeaseService first;
+    private ScheduleLeaseService second;
+
+    @BeforeEach
+    void setUp() {
+        var schedule = new FixedDelaySchedule();
+        schedule.setOn(true);
+        var codeFunction = new CodeFunction();
+        codeFunction.setName(FUNCTION_NAME);
+        codeFunction.setSchedule(schedule);
+        codeFunctionRepository.save(codeFunction).block();
+        first = createService("first");
+        second = createService("second");
+    }
+
+    @AfterEach
+    void tearDown() {
+        List.of(first, second).forEach(ScheduleLeaseService::stop);
+        codeFunctionRepository.deleteAll()
+                .then(reactiveMongoTemplate.dropCollection(ScheduleLease.class))
+                .then(reactiveMongoTemplate.dropCollection(SchedulerInstance.class))
+                .block();
+    }
+
+    @Test
+    void onlyOneInstanceClaimsTheLease() {
+        first.start();
+        second.start();
+        waitFor(() -> first.isOwner(FUNCTION_NAME) || second.isOwner(FUNCTION_NAME));
+        waitFor(() -> countLeases() == 1);
+        assertTrue(first.isOwner(FUNCTION_NAME) ^ second.isOwner(FUNCTION_NAME));
+        assertEquals(1, countLeases());
+    }
+
+    @Test
+    void survivorTakesOverAfterGracefulStop() {
+        first.start();
+        waitFor(() -> first.isOwner(FUNCTION_NAME));
+        second.start();
+        var owner = awaitOwner();
+        var survivor = owner == first ? second : first;
+        owner.stop();
+        waitFor(() -> survivor.isOwner(FUNCTION_NAME));
+    }
+
+    @Test
+    void survivorTakesOverAfterLeaseExpires() {
+        first.start();
+        second.start();
+        var owner = awaitOwner();
+        var survivor = owner == first ? second : first;
+        ((Disposable) ReflectionTestUtils.getField(owner, "renewal")).dispose();
+        waitFor(() -> survivor.isOwner(FUNCTION_NAME));
+        waitFor(() -> !owner.isOwner(FUNCTION_NAME));
+    }
+
+    private ScheduleLeaseService awaitOwner() {
+        waitFor(() -> first.isOwner(FUNCTION_NAME) ^ second.isOwner(FUNCTION_NAME));
+        return first.isOwner(FUNCTION_NAME) ? first : second;
+    }
+
+    private long countLeases() {
+        return reactiveMongoTemplate.findAll(ScheduleLease.class).count().blockOptional().orElse(0L);
+    }
+
+    private ScheduleLeaseService createService(String instanceId) {
+        var codeFunctionCache = new CodeFunctionCache(codeFunctionRepository, reactiveMongoTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(codeFunctionCache, "capacity", 1000);
+        codeFunctionCache.init();
+        var service = new ScheduleLeaseService(reactiveMongoTemplate, codeFunctionCache);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "instanceId", instanceId);
+        ReflectionTestUtils.setField(service, "leaseDuration", 1000L);
+        ReflectionTestUtils.setField(service, "renewInterval", 100L);
+        return service;
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        var deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met within %s".formatted(TIMEOUT));
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
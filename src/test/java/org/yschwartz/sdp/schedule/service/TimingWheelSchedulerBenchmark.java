@@ -0,0 +1,105 @@
+package org.yschwartz.sdp.schedule.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TimingWheelSchedulerBenchmark {
+    private static final int SCHEDULES = 10_000;
+    private static final int THREADS = 4;
+    private static final long PERIOD = 1000;
+    private static final long WINDOW = 10_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        var schedules = args.length > 0 ? Integer.parseInt(args[0]) : SCHEDULES;
+        System.out.printf("%d schedules, every %d ms, %d threads, %d ms window%n", schedules, PERIOD, THREADS, WINDOW);
+        benchmarkTaskScheduler(schedules);
+        benchmarkTimingWheel(schedules);
+    }
+
+    private static void benchmarkTaskScheduler(int schedules) throws InterruptedException {
+        var scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(THREADS);
+        scheduler.initialize();
+        var lateness = new ConcurrentLinkedQueue<Long>();
+        run("TaskScheduler", schedules, lateness, () -> {
+            var scheduled = new AtomicLong();
+            var trigger = new RecordingTrigger(new PeriodicTrigger(PERIOD), scheduled);
+            var future = scheduler.schedule(() -> lateness.add(System.currentTimeMillis() - scheduled.get()), trigger);
+            return () -> future.cancel(false);
+        });
+        scheduler.shutdown();
+    }
+
+    private static void benchmarkTimingWheel(int schedules) throws InterruptedException {
+        var scheduler = new TimingWheelScheduler();
+        ReflectionTestUtils.setField(scheduler, "tickMs", 10L);
+        ReflectionTestUtils.setField(scheduler, "wheelSize", 512);
+        ReflectionTestUtils.setField(scheduler, "threads", THREADS);
+        ReflectionTestUtils.setField(scheduler, "smoothingWindow", 0L);
+        scheduler.start();
+        var lateness = new ConcurrentLinkedQueue<Long>();
+        run("TimingWheelScheduler", schedules, lateness, () -> {
+            var scheduled = new AtomicLong();
+            var trigger = new RecordingTrigger(new PeriodicTrigger(PERIOD), scheduled);
+            var registration = scheduler.schedule(firing -> lateness.add(System.currentTimeMillis() - scheduled.get()), trigger, () -> 0);
+            return registration::dispose;
+        });
+        scheduler.stop();
+    }
+
+    private static void run(String name, int schedules, ConcurrentLinkedQueue<Long> lateness, Supplier<Runnable> schedule) throws InterruptedException {
+        System.gc();
+        var memory = usedMemory();
+        var start = System.nanoTime();
+        var cancels = new ArrayList<Runnable>(schedules);
+        for (int i = 0; i < schedules; i++)
+            cancels.add(schedule.get());
+        var scheduleTime = (System.nanoTime() - start) / 1_000_000;
+        Thread.sleep(WINDOW);
+        start = System.nanoTime();
+        cancels.forEach(Runnable::run);
+        var cancelTime = (System.nanoTime() - start) / 1_000_000;
+        var samples = new ArrayList<>(lateness);
+        samples.sort(Long::compare);
+        System.out.printf("%-20s schedule %5d ms, cancel %4d ms, %7d firings, lateness p50 %4d ms, p99 %4d ms, max %4d ms, heap +%d KiB%n",
+                name, scheduleTime, cancelTime, samples.size(), percentile(samples, 0.5), percentile(samples, 0.99),
+                samples.isEmpty() ? 0 : samples.get(samples.size() - 1), (usedMemory() - memory) / 1024);
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        return sorted.isEmpty() ? 0 : sorted.get((int) Math.min(sorted.size() - 1, Math.round(percentile * sorted.size())));
+    }
+
+    private static long usedMemory() {
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class RecordingTrigger implements Trigger {
+        private final Trigger trigger;
+        private final AtomicLong scheduled;
+
+        private RecordingTrigger(Trigger trigger, AtomicLong scheduled) {
+            this.trigger = trigger;
+            this.scheduled = scheduled;
+        }
+
+        @Override
+        public Date nextExecutionTime(TriggerContext context) {
+            var next = trigger.nextExecutionTime(context);
+            if (next != null)
+                scheduled.set(next.getTime());
+            return next;
+        }
+    }
+}